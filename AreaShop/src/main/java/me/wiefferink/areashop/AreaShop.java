@@ -9,11 +9,15 @@ import me.wiefferink.areashop.listeners.PlayerLoginLogoutListener;
 import me.wiefferink.areashop.listeners.SignBreakListener;
 import me.wiefferink.areashop.listeners.SignChangeListener;
 import me.wiefferink.areashop.listeners.SignClickListener;
+import me.wiefferink.areashop.listeners.WorldLoadUnloadListener;
 import me.wiefferink.areashop.managers.CommandManager;
 import me.wiefferink.areashop.managers.FeatureManager;
 import me.wiefferink.areashop.managers.FileManager;
 import me.wiefferink.areashop.managers.Manager;
+import me.wiefferink.areashop.managers.NameCache;
+import me.wiefferink.areashop.managers.PermissionCache;
 import me.wiefferink.areashop.managers.SignLinkerManager;
+import me.wiefferink.areashop.managers.WorkManager;
 import me.wiefferink.areashop.tools.Analytics;
 import me.wiefferink.areashop.tools.GithubUpdateCheck;
 import me.wiefferink.areashop.tools.Utils;
@@ -60,6 +64,9 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 	private CommandManager commandManager = null;
 	private SignLinkerManager signLinkerManager = null;
 	private FeatureManager featureManager = null;
+	private WorkManager workManager = null;
+	private PermissionCache permissionCache = null;
+	private NameCache nameCache = null;
 	private Set<Manager> managers = null;
 	private boolean debug = false;
 	private List<String> chatprefix = null;
@@ -71,6 +78,10 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 	public static final String schematicFolder = "schem";
 	public static final String schematicExtension = ".schematic";
 	public static final String regionsFolder = "regions";
+	public static final String regionsDatabase = "regions.db";
+	public static final String journalFolder = "journal";
+	public static final String regionsIndex = "regions.index";
+	public static final String nameCacheFile = "names.cache";
 	public static final String groupsFile = "groups.yml";
 	public static final String defaultFile = "default.yml";
 	public static final String configFile = "config.yml";
@@ -268,8 +279,19 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 		// Load all data from files and check versions
 		fileManager = new FileManager();
 		managers.add(fileManager);
+		// Player names are learned while loading the regions
+		nameCache = new NameCache();
+		managers.add(nameCache);
 		error = error | !fileManager.loadFiles(false);
 
+		// Executes background work on regions spread over ticks
+		workManager = new WorkManager();
+		managers.add(workManager);
+
+		// Caches permissions of offline players
+		permissionCache = new PermissionCache();
+		managers.add(permissionCache);
+
 		// Print loaded version of WG and WE in debug
 		if(wgVersion != null) {
 			AreaShop.debug("Loaded WorldGuardHandler" + wgVersion + " (raw version: " + rawVersion + ", major:" + major + ", minor:" + minor + ", fixes:" + fixes + ", build:" + build + ")");
@@ -291,6 +313,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 			getServer().getPluginManager().registerEvents(new SignBreakListener(this), this);
 			getServer().getPluginManager().registerEvents(new SignClickListener(this), this);
 			getServer().getPluginManager().registerEvents(new PlayerLoginLogoutListener(this), this);
+			getServer().getPluginManager().registerEvents(new WorldLoadUnloadListener(this), this);
 
 			setupTasks();
 
@@ -381,6 +404,9 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 		commandManager = null;
 		signLinkerManager = null;
 		featureManager = null;
+		workManager = null;
+		permissionCache = null;
+		nameCache = null;
 
 		// Cleanup plugins
 		worldGuard = null;
@@ -547,14 +573,37 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 		// Resolve while offline if possible
 		net.milkbowl.vault.permission.Permission permissionProvider = getPermissionProvider();
 		if(permissionProvider != null) {
-			// TODO: Should we provide a world here?
-			return permissionProvider.playerHas(null, offlinePlayer, permission);
+			return permissionCache.hasPermission(offlinePlayer, permissionProvider, permission);
 		}
 
 		// Player offline and no offline permission provider available, safely say that there is no permission
 		return false;
 	}
 
+	/**
+	 * Get the PermissionCache that keeps permissions of offline players.
+	 * @return The PermissionCache
+	 */
+	public PermissionCache getPermissionCache() {
+		return permissionCache;
+	}
+
+	/**
+	 * Get the NameCache that keeps player names by UUID.
+	 * @return The NameCache
+	 */
+	public NameCache getNameCache() {
+		return nameCache;
+	}
+
+	/**
+	 * Get the WorkManager that executes background work on regions spread over ticks.
+	 * @return The WorkManager
+	 */
+	public WorkManager getWorkManager() {
+		return workManager;
+	}
+
 	/**
 	 * Method to get the FileManager (loads/save regions and can be used to get regions).
 	 * @return The fileManager
@@ -635,6 +684,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 			Do.syncTimer(saveFiles, () -> {
 				if(isReady()) {
 					finalPlugin.getFileManager().saveRequiredFiles();
+					finalPlugin.getNameCache().saveIfRequired();
 					AreaShop.debugTask("Saving required files...");
 				} else {
 					AreaShop.debugTask("Skipped saving required files, plugin not ready");
@@ -655,10 +705,23 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 			});
 		}
 
+		// Unloading region configurations that are not used
+		long unloadConfigs = Utils.millisToTicks(Utils.getDurationFromSecondsOrString("lazyLoading.unloadDelay"));
+		if(getConfig().getBoolean("lazyLoading.enabled") && unloadConfigs > 0) {
+			Do.syncTimer(unloadConfigs, () -> {
+				if(isReady()) {
+					finalPlugin.getFileManager().unloadRegionConfigs();
+					AreaShop.debugTask("Unloading unused region configurations...");
+				} else {
+					AreaShop.debugTask("Skipped unloading unused region configurations, plugin not ready");
+				}
+			});
+		}
+
 		// Update all regions on startup
 		if(getConfig().getBoolean("updateRegionsOnStartup")) {
 			Do.syncLater(20, () -> {
-				finalPlugin.getFileManager().updateAllRegions();
+				finalPlugin.getFileManager().updateRegionsOnStartup();
 				AreaShop.debugTask("Updating all regions at startup...");
 			});
 		}
@@ -750,8 +813,10 @@ public final class AreaShop extends JavaPlugin implements AreaShopInterface {
 	 */
 	public void reload(final CommandSender confirmationReceiver) {
 		setReady(false);
-		fileManager.saveRequiredFilesAtOnce();
+		fileManager.flushRequiredFiles();
 		fileManager.loadFiles(true);
+		permissionCache.loadSettings();
+		permissionCache.invalidateAll();
 		setupLanguageManager();
 		message(confirmationReceiver, "reload-reloading");
 		fileManager.checkRents();
@@ -4,11 +4,11 @@ import com.sk89q.worldedit.bukkit.selections.Selection;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import me.wiefferink.areashop.AreaShop;
 import me.wiefferink.areashop.managers.FileManager;
+import me.wiefferink.areashop.managers.WorkManager;
 import me.wiefferink.areashop.regions.BuyRegion;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import me.wiefferink.areashop.regions.RentRegion;
 import me.wiefferink.areashop.tools.Utils;
-import me.wiefferink.bukkitdo.Do;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
@@ -114,8 +114,9 @@ public class AddCommand extends CommandAreaShop {
 		TreeSet<GeneralRegion> regionsAlready = new TreeSet<>();
 		TreeSet<String> namesBlacklisted = new TreeSet<>();
 		TreeSet<String> namesNoPermission = new TreeSet<>();
-		Do.forAll(
-			plugin.getConfig().getInt("adding.regionsPerTick"),
+		plugin.getWorkManager().forAll(
+			"adding regions",
+			WorkManager.Priority.HIGH,
 			regions,
 			region -> {
 				// Determine if the player is an owner or member of the region
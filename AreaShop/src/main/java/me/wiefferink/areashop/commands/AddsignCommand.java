@@ -1,6 +1,5 @@
 package me.wiefferink.areashop.commands;
 
-import com.sk89q.worldedit.bukkit.selections.CuboidSelection;
 import me.wiefferink.areashop.features.SignsFeature;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import me.wiefferink.areashop.tools.Utils;
@@ -66,7 +65,7 @@ public class AddsignCommand extends CommandAreaShop {
 			}
 		} else {
 			// Get region by sign position
-			List<GeneralRegion> regions = Utils.getRegionsInSelection(new CuboidSelection(block.getWorld(), block.getLocation(), block.getLocation()));
+			List<GeneralRegion> regions = Utils.getRegions(block.getLocation());
 			if(regions.isEmpty()) {
 				plugin.message(sender, "addsign-noRegions");
 				return;
@@ -86,7 +85,7 @@ public class AddsignCommand extends CommandAreaShop {
 				return;
 			}
 		}
-		SignsFeature.RegionSign regionSign = SignsFeature.getSignByLocation(block.getLocation());
+		SignsFeature.RegionSign regionSign = SignsFeature.getSignByBlock(block);
 		if(regionSign != null) {
 			plugin.message(sender, "addsign-alreadyRegistered", regionSign.getRegion());
 			return;
@@ -50,7 +50,7 @@ public class DelsignCommand extends CommandAreaShop {
 			plugin.message(sender, "delsign-noSign");
 			return;
 		}
-		SignsFeature.RegionSign regionSign = SignsFeature.getSignByLocation(block.getLocation());
+		SignsFeature.RegionSign regionSign = SignsFeature.getSignByBlock(block);
 		if(regionSign == null) {
 			plugin.message(sender, "delsign-noRegion");
 			return;
@@ -14,6 +14,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -230,6 +231,40 @@ public class InfoCommand extends CommandAreaShop {
 				}
 			}
 
+			// Regions that will be unrented/sold first because of inactivity of the owner
+			else if(args[1].equalsIgnoreCase("inactive")) {
+				if(!sender.hasPermission("areashop.inactiveinfo")) {
+					plugin.message(sender, "info-inactiveNoPermission");
+					return;
+				}
+				int amount = 10;
+				if(args.length > 2) {
+					try {
+						amount = Integer.parseInt(args[2]);
+					} catch(NumberFormatException e) {
+						plugin.message(sender, "info-inactiveWrongAmount", args[2]);
+						return;
+					}
+				}
+				List<GeneralRegion> regions = plugin.getFileManager().getUpcomingInactiveRegions(amount);
+				if(regions.isEmpty()) {
+					plugin.message(sender, "info-inactiveNone");
+				} else {
+					plugin.message(sender, "info-inactiveHeader");
+					long now = Calendar.getInstance().getTimeInMillis();
+					for(GeneralRegion region : regions) {
+						Long deadline = plugin.getFileManager().getInactivityDeadline(region);
+						Message time;
+						if(deadline == null || deadline <= now) {
+							time = Message.fromKey("info-inactiveEntryDue");
+						} else {
+							time = Message.fromKey("info-inactiveEntryTime").replacements(Utils.millisToHumanFormat(deadline - now));
+						}
+						plugin.messageNoPrefix(sender, "info-inactiveEntry", region, time);
+					}
+				}
+			}
+
 			// Region info
 			else if(args[1].equalsIgnoreCase("region")) {
 				if(args.length > 1) {
@@ -442,7 +477,7 @@ public class InfoCommand extends CommandAreaShop {
 	public List<String> getTabCompleteList(int toComplete, String[] start, CommandSender sender) {
 		List<String> result = new ArrayList<>();
 		if(toComplete == 2) {
-			result.addAll(Arrays.asList("all", "rented", "forrent", "sold", "forsale", "player", "region", "nogroup", "reselling"));
+			result.addAll(Arrays.asList("all", "rented", "forrent", "sold", "forsale", "player", "region", "nogroup", "reselling", "inactive"));
 		} else if(toComplete == 3) {
 			if(start[2].equalsIgnoreCase("player")) {
 				for(Player player : Utils.getOnlinePlayers()) {
@@ -56,25 +56,10 @@ public class MeCommand extends CommandAreaShop {
 		}
 
 		// Get the regions owned by the player
-		Set<RentRegion> rentRegions = new HashSet<>();
-		for(RentRegion region : plugin.getFileManager().getRents()) {
-			if(region.isOwner(player)) {
-				rentRegions.add(region);
-			}
-		}
-		Set<BuyRegion> buyRegions = new HashSet<>();
-		for(BuyRegion region : plugin.getFileManager().getBuys()) {
-			if(region.isOwner(player)) {
-				buyRegions.add(region);
-			}
-		}
+		Set<RentRegion> rentRegions = new HashSet<>(plugin.getFileManager().getRentsOwnedBy(player.getUniqueId()));
+		Set<BuyRegion> buyRegions = new HashSet<>(plugin.getFileManager().getBuysOwnedBy(player.getUniqueId()));
 		// Get the regions the player is added as friend
-		Set<GeneralRegion> friendRegions = new HashSet<>();
-		for(GeneralRegion region : plugin.getFileManager().getRegions()) {
-			if(region.getFriendsFeature().getFriends().contains(player.getUniqueId())) {
-				friendRegions.add(region);
-			}
-		}
+		Set<GeneralRegion> friendRegions = new HashSet<>(plugin.getFileManager().getRegionsWithFriend(player.getUniqueId()));
 
 		// Send messages
 		boolean foundSome = !rentRegions.isEmpty() || !buyRegions.isEmpty() || !friendRegions.isEmpty();
@@ -0,0 +1,116 @@
+package me.wiefferink.areashop.commands;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.regions.GeneralRegion;
+import me.wiefferink.areashop.storage.RegionSnapshot;
+import me.wiefferink.areashop.storage.RegionStore;
+import me.wiefferink.areashop.storage.SqliteRegionStore;
+import me.wiefferink.areashop.storage.YamlRegionStore;
+import me.wiefferink.bukkitdo.Do;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MigrateCommand extends CommandAreaShop {
+
+	private boolean migrating = false;
+
+	@Override
+	public String getCommandStart() {
+		return "areashop migrate";
+	}
+
+	@Override
+	public String getHelp(CommandSender target) {
+		if(target.hasPermission("areashop.migrate")) {
+			return "help-migrate";
+		}
+		return null;
+	}
+
+	@Override
+	public void execute(CommandSender sender, String[] args) {
+		if(!sender.hasPermission("areashop.migrate")) {
+			plugin.message(sender, "migrate-noPermission");
+			return;
+		}
+		if(args.length < 2) {
+			plugin.message(sender, "migrate-help");
+			return;
+		}
+		if(migrating) {
+			plugin.message(sender, "migrate-busy");
+			return;
+		}
+
+		String type = args[1].toLowerCase();
+		if(plugin.getFileManager().getSaveQueue().getStore().getType().equals(type)) {
+			plugin.message(sender, "migrate-sameType", type);
+			return;
+		}
+		if(!YamlRegionStore.TYPE.equals(type) && !SqliteRegionStore.TYPE.equals(type)) {
+			plugin.message(sender, "migrate-wrongType", type);
+			return;
+		}
+		RegionStore target = plugin.getFileManager().createStore(type);
+		if(target == null) {
+			plugin.message(sender, "migrate-failed", type);
+			return;
+		}
+
+		// Serialize the regions on the main thread, writing them is done async
+		List<RegionSnapshot> snapshots = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		for(GeneralRegion region : plugin.getFileManager().getRegions()) {
+			snapshots.add(region.createSnapshot());
+			names.add(region.getLowerCaseName());
+		}
+		migrating = true;
+		plugin.message(sender, "migrate-start", snapshots.size(), type);
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				boolean success = false;
+				try {
+					// Remove regions that are left from an earlier migration
+					for(String name : target.getNames()) {
+						if(!names.contains(name)) {
+							target.delete(name);
+						}
+					}
+					target.saveAll(snapshots);
+					success = true;
+				} catch(IOException e) {
+					AreaShop.error("Migrating regions to " + type + " storage failed:", e.getMessage());
+				} finally {
+					target.close();
+				}
+				boolean result = success;
+				Do.sync(() -> {
+					migrating = false;
+					if(result) {
+						plugin.message(sender, "migrate-success", snapshots.size(), type);
+					} else {
+						plugin.message(sender, "migrate-failed", type);
+					}
+				});
+			}
+		}.runTaskAsynchronously(plugin);
+	}
+
+	@Override
+	public List<String> getTabCompleteList(int toComplete, String[] start, CommandSender sender) {
+		List<String> result = new ArrayList<>();
+		if(toComplete == 2) {
+			result.add(YamlRegionStore.TYPE);
+			result.add(SqliteRegionStore.TYPE);
+		}
+		return result;
+	}
+
+}
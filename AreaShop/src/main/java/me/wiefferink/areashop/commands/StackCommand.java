@@ -6,6 +6,7 @@ import com.sk89q.worldedit.bukkit.selections.Selection;
 import com.sk89q.worldguard.protection.managers.RegionManager;
 import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
 import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.managers.WorkManager;
 import me.wiefferink.areashop.regions.BuyRegion;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import me.wiefferink.areashop.regions.RegionGroup;
@@ -15,7 +16,6 @@ import me.wiefferink.interactivemessenger.processing.Message;
 import org.bukkit.block.BlockFace;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -122,7 +122,6 @@ public class StackCommand extends CommandAreaShop {
 		final String nameTemplate = args[3];
 
 
-		final int regionsPerTick = plugin.getConfig().getInt("adding.regionsPerTick");
 		final boolean rentRegions = "rent".equalsIgnoreCase(args[4]);
 		final int amount = tempAmount;
 		final RegionGroup finalGroup = group;
@@ -138,8 +137,8 @@ public class StackCommand extends CommandAreaShop {
 			groupsMessage = Message.fromKey("stack-addToGroup").replacements(group.getName());
 		}
 		plugin.message(player, "stack-accepted", amount, type, gap, nameTemplate, groupsMessage);
-		plugin.message(player, "stack-addStart", amount, regionsPerTick * 20);
-		new BukkitRunnable() {
+		plugin.message(player, "stack-addStart", amount);
+		plugin.getWorkManager().submit("stack of " + nameTemplate, WorkManager.Priority.HIGH, new WorkManager.Task() {
 			private int current = -1;
 			private RegionManager manager = AreaShop.getInstance().getWorldGuard().getRegionManager(selection.getWorld());
 			private int counter = 1;
@@ -147,73 +146,12 @@ public class StackCommand extends CommandAreaShop {
 			private int tooHigh = 0;
 
 			@Override
-			public void run() {
-				for(int i = 0; i < regionsPerTick; i++) {
-					current++;
-					if(current < amount) {
-						// Create the region name
-						String counterName = counter + "";
-						int minimumLength = plugin.getConfig().getInt("stackRegionNumberLength");
-						while(counterName.length() < minimumLength) {
-							counterName = "0" + counterName;
-						}
-						String regionName;
-						if(nameTemplate.contains("#")) {
-							regionName = nameTemplate.replace("#", counterName);
-						} else {
-							regionName = nameTemplate + counterName;
-						}
-						while(manager.getRegion(regionName) != null || AreaShop.getInstance().getFileManager().getRegion(regionName) != null) {
-							counter++;
-							counterName = counter + "";
-							minimumLength = plugin.getConfig().getInt("stackRegionNumberLength");
-							while(counterName.length() < minimumLength) {
-								counterName = "0" + counterName;
-							}
-							if(nameTemplate.contains("#")) {
-								regionName = nameTemplate.replace("#", counterName);
-							} else {
-								regionName = nameTemplate + counterName;
-							}
-						}
-						// Add the region to WorldGuard (at startposition shifted by the number of this region times the blocks it should shift)
-						BlockVector minimum = new BlockVector(selection.getNativeMinimumPoint().add(finalShift.multiply(current)));
-						BlockVector maximum = new BlockVector(selection.getNativeMaximumPoint().add(finalShift.multiply(current)));
-						// Check for out of bounds
-						if(minimum.getBlockY() < 0) {
-							tooLow++;
-							continue;
-						} else if(maximum.getBlockY() > 256) {
-							tooHigh++;
-							continue;
-						}
-						ProtectedCuboidRegion region = new ProtectedCuboidRegion(regionName, minimum, maximum);
-						manager.addRegion(region);
-						// Add the region to AreaShop
-						if(rentRegions) {
-							RentRegion rent = new RentRegion(region.getId(), selection.getWorld());
-							if(finalGroup != null) {
-								finalGroup.addMember(rent);
-							}
-							rent.runEventCommands(GeneralRegion.RegionEvent.CREATED, true);
-							plugin.getFileManager().addRent(rent);
-							rent.handleSchematicEvent(GeneralRegion.RegionEvent.CREATED);
-							rent.runEventCommands(GeneralRegion.RegionEvent.CREATED, false);
-							rent.update();
-						} else {
-							BuyRegion buy = new BuyRegion(region.getId(), selection.getWorld());
-							if(finalGroup != null) {
-								finalGroup.addMember(buy);
-							}
-							buy.runEventCommands(GeneralRegion.RegionEvent.CREATED, true);
-							plugin.getFileManager().addBuy(buy);
-							buy.handleSchematicEvent(GeneralRegion.RegionEvent.CREATED);
-							buy.runEventCommands(GeneralRegion.RegionEvent.CREATED, false);
-							buy.update();
-						}
-					}
+			public boolean step() {
+				current++;
+				if(current < amount) {
+					addRegion();
 				}
-				if(current >= amount) {
+				if(current + 1 >= amount) {
 					if(player.isOnline()) {
 						int added = amount - tooLow - tooHigh;
 						Message wrong = Message.empty();
@@ -225,10 +163,77 @@ public class StackCommand extends CommandAreaShop {
 						}
 						plugin.message(player, "stack-addComplete", added, wrong);
 					}
-					this.cancel();
+					return false;
+				}
+				return true;
+			}
+
+			/**
+			 * Add the next region of the stack.
+			 */
+			private void addRegion() {
+				// Create the region name
+				String counterName = counter + "";
+				int minimumLength = plugin.getConfig().getInt("stackRegionNumberLength");
+				while(counterName.length() < minimumLength) {
+					counterName = "0" + counterName;
+				}
+				String regionName;
+				if(nameTemplate.contains("#")) {
+					regionName = nameTemplate.replace("#", counterName);
+				} else {
+					regionName = nameTemplate + counterName;
+				}
+				while(manager.getRegion(regionName) != null || AreaShop.getInstance().getFileManager().getRegion(regionName) != null) {
+					counter++;
+					counterName = counter + "";
+					minimumLength = plugin.getConfig().getInt("stackRegionNumberLength");
+					while(counterName.length() < minimumLength) {
+						counterName = "0" + counterName;
+					}
+					if(nameTemplate.contains("#")) {
+						regionName = nameTemplate.replace("#", counterName);
+					} else {
+						regionName = nameTemplate + counterName;
+					}
+				}
+				// Add the region to WorldGuard (at startposition shifted by the number of this region times the blocks it should shift)
+				BlockVector minimum = new BlockVector(selection.getNativeMinimumPoint().add(finalShift.multiply(current)));
+				BlockVector maximum = new BlockVector(selection.getNativeMaximumPoint().add(finalShift.multiply(current)));
+				// Check for out of bounds
+				if(minimum.getBlockY() < 0) {
+					tooLow++;
+					return;
+				} else if(maximum.getBlockY() > 256) {
+					tooHigh++;
+					return;
+				}
+				ProtectedCuboidRegion region = new ProtectedCuboidRegion(regionName, minimum, maximum);
+				manager.addRegion(region);
+				// Add the region to AreaShop
+				if(rentRegions) {
+					RentRegion rent = new RentRegion(region.getId(), selection.getWorld());
+					if(finalGroup != null) {
+						finalGroup.addMember(rent);
+					}
+					rent.runEventCommands(GeneralRegion.RegionEvent.CREATED, true);
+					plugin.getFileManager().addRent(rent);
+					rent.handleSchematicEvent(GeneralRegion.RegionEvent.CREATED);
+					rent.runEventCommands(GeneralRegion.RegionEvent.CREATED, false);
+					rent.update();
+				} else {
+					BuyRegion buy = new BuyRegion(region.getId(), selection.getWorld());
+					if(finalGroup != null) {
+						finalGroup.addMember(buy);
+					}
+					buy.runEventCommands(GeneralRegion.RegionEvent.CREATED, true);
+					plugin.getFileManager().addBuy(buy);
+					buy.handleSchematicEvent(GeneralRegion.RegionEvent.CREATED);
+					buy.runEventCommands(GeneralRegion.RegionEvent.CREATED, false);
+					buy.update();
 				}
 			}
-		}.runTaskTimer(plugin, 1, 1);
+		}, null);
 	}
 
 	@Override
@@ -3,17 +3,41 @@ package me.wiefferink.areashop.events.notify;
 import me.wiefferink.areashop.events.NotifyRegionEvent;
 import me.wiefferink.areashop.regions.GeneralRegion;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Broadcasted when the data of a region changes.
  * Should be used for updating displays that use region data.
  */
 public class UpdateRegionEvent extends NotifyRegionEvent<GeneralRegion> {
 
+	private final Set<String> changedTags;
+
 	/**
 	 * Contructor.
 	 * @param region The region that has been updated
 	 */
 	public UpdateRegionEvent(GeneralRegion region) {
+		this(region, null);
+	}
+
+	/**
+	 * Contructor.
+	 * @param region      The region that has been updated
+	 * @param changedTags The replacement tags of which the value might have changed, null if everything might have changed
+	 */
+	public UpdateRegionEvent(GeneralRegion region, Set<String> changedTags) {
 		super(region);
+		this.changedTags = changedTags == null ? null : Collections.unmodifiableSet(changedTags);
+	}
+
+	/**
+	 * Get the replacement tags of which the value might have changed.
+	 * Displays that only use other tags do not have to be updated.
+	 * @return The changed tags (unmodifiable), or null if everything might have changed
+	 */
+	public Set<String> getChangedTags() {
+		return changedTags;
 	}
 }
@@ -4,7 +4,6 @@ import me.wiefferink.areashop.events.askandnotify.AddedFriendEvent;
 import me.wiefferink.areashop.events.askandnotify.DeletedFriendEvent;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 
 import java.util.ArrayList;
@@ -72,16 +71,7 @@ public class FriendsFeature extends RegionFeature {
 	 * @return Friends added to this region
 	 */
 	public Set<UUID> getFriends() {
-		HashSet<UUID> result = new HashSet<>();
-		for(String friend : region.getConfig().getStringList("general.friends")) {
-			try {
-				UUID id = UUID.fromString(friend);
-				result.add(id);
-			} catch(IllegalArgumentException e) {
-				// Don't add it
-			}
-		}
-		return result;
+		return new HashSet<>(region.getFriends());
 	}
 
 	/**
@@ -91,9 +81,10 @@ public class FriendsFeature extends RegionFeature {
 	public Set<String> getFriendNames() {
 		HashSet<String> result = new HashSet<>();
 		for(UUID friend : getFriends()) {
-			OfflinePlayer player = Bukkit.getOfflinePlayer(friend);
-			if(player != null && player.getName() != null) {
-				result.add(player.getName());
+			// Friends that are not cached yet are skipped until their name has been resolved
+			String name = plugin.getNameCache().getNameOrRequest(friend);
+			if(name != null) {
+				result.add(name);
 			}
 		}
 		return result;
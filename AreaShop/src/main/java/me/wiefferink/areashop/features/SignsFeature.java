@@ -3,11 +3,18 @@ package me.wiefferink.areashop.features;
 import me.wiefferink.areashop.AreaShop;
 import me.wiefferink.areashop.events.notify.UpdateRegionEvent;
 import me.wiefferink.areashop.regions.GeneralRegion;
+import me.wiefferink.areashop.regions.RentRegion;
+import me.wiefferink.areashop.storage.RegionIndex;
+import me.wiefferink.areashop.tools.BlockPositionMap;
+import me.wiefferink.areashop.tools.TagDependencies;
 import me.wiefferink.areashop.tools.Utils;
+import me.wiefferink.bukkitdo.Do;
 import me.wiefferink.interactivemessenger.processing.Message;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.Sign;
@@ -15,8 +22,12 @@ import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.world.ChunkLoadEvent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -25,7 +36,11 @@ import java.util.Set;
 
 public class SignsFeature extends RegionFeature {
 
-	private static Map<String, RegionSign> allSigns = new HashMap<>();
+	private static BlockPositionMap<RegionSign> allSigns = new BlockPositionMap<>();
+	// Signs in unloaded chunks that should be updated when their chunk loads
+	private static BlockPositionMap<RegionSign> pendingUpdates = new BlockPositionMap<>();
+	private static long signWritesApplied = 0;
+	private static long signWritesSkipped = 0;
 
 	private Map<String, RegionSign> signs;
 
@@ -40,6 +55,16 @@ public class SignsFeature extends RegionFeature {
 	public SignsFeature(GeneralRegion region) {
 		this.region = region;
 		signs = new HashMap<>();
+		RegionIndex.Entry indexEntry = region.getUnloadedEntry();
+		if(indexEntry != null) {
+			// Register the signs from the index, the configuration is loaded when a sign is used
+			for(RegionIndex.SignPosition position : indexEntry.getSigns()) {
+				RegionSign sign = new RegionSign(region, position);
+				signs.put(sign.getKey(), sign);
+				allSigns.put(sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ(), sign);
+			}
+			return;
+		}
 		// Setup current signs
 		ConfigurationSection signSection = region.getConfig().getConfigurationSection("general.signs");
 		if(signSection != null) {
@@ -50,9 +75,9 @@ public class SignsFeature extends RegionFeature {
 					AreaShop.warn("Sign with key " + signKey + " of region " + region.getName() + " does not have a proper location");
 					continue;
 				}
-				signs.put(sign.getStringLocation(), sign);
+				signs.put(signKey, sign);
+				allSigns.put(sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ(), sign);
 			}
-			allSigns.putAll(signs);
 		}
 	}
 
@@ -60,19 +85,35 @@ public class SignsFeature extends RegionFeature {
 	public void shutdown() {
 		// Deregister signs from the registry
 		if(signs != null) {
-			for(String key : signs.keySet()) {
-				allSigns.remove(key);
+			for(RegionSign sign : signs.values()) {
+				allSigns.remove(sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ(), sign);
+				pendingUpdates.remove(sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ(), sign);
 			}
 		}
 	}
 
 	/**
-	 * Convert a location to a string to use as map key.
-	 * @param location The location to get the key for
-	 * @return A string to use in a map for a location
+	 * Get the number of sign updates that have been written to the world.
+	 * @return The number of applied writes since startup
+	 */
+	public static long getSignWritesApplied() {
+		return signWritesApplied;
+	}
+
+	/**
+	 * Get the number of sign updates that have been skipped because the sign already displayed the correct text.
+	 * @return The number of skipped writes since startup
+	 */
+	public static long getSignWritesSkipped() {
+		return signWritesSkipped;
+	}
+
+	/**
+	 * Get the number of signs that wait for their chunk to load before they are updated.
+	 * @return The number of pending sign updates
 	 */
-	private static String locationToString(Location location) {
-		return location.getWorld().getName() + ";" + location.getBlockX() + ";" + location.getBlockY() + ";" + location.getBlockZ();
+	public static int getPendingUpdateCount() {
+		return pendingUpdates.size();
 	}
 
 	/**
@@ -81,12 +122,50 @@ public class SignsFeature extends RegionFeature {
 	 * @return The RegionSign that is at the location, or null if none
 	 */
 	public static RegionSign getSignByLocation(Location location) {
-		return allSigns.get(locationToString(location));
+		return allSigns.get(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+	}
+
+	/**
+	 * Get a sign by a block.
+	 * @param block The block to get the sign for
+	 * @return The RegionSign that is at the block, or null if none
+	 */
+	public static RegionSign getSignByBlock(Block block) {
+		return allSigns.get(block);
+	}
+
+	/**
+	 * Get the signs in a chunk.
+	 * @param world  The name of the world
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @return The signs in the chunk (unmodifiable)
+	 */
+	public static Collection<RegionSign> getSignsInChunk(String world, int chunkX, int chunkZ) {
+		return allSigns.getChunk(world, chunkX, chunkZ);
 	}
 
 	@EventHandler
 	public void regionUpdate(UpdateRegionEvent event) {
-		event.getRegion().getSignsFeature().update();
+		event.getRegion().getSignsFeature().update(event.getChangedTags());
+	}
+
+	@EventHandler
+	public void chunkLoad(ChunkLoadEvent event) {
+		Chunk chunk = event.getChunk();
+		Collection<RegionSign> pending = pendingUpdates.removeChunk(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+		if(pending.isEmpty()) {
+			return;
+		}
+		// Change the blocks after the chunk has been loaded completely
+		Do.syncLater(1, () -> {
+			for(RegionSign sign : pending) {
+				// Skip signs that have been removed in the meantime
+				if(allSigns.get(sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ()) == sign) {
+					sign.update();
+				}
+			}
+		});
 	}
 
 	/**
@@ -94,18 +173,57 @@ public class SignsFeature extends RegionFeature {
 	 * @return true if all signs are updated correctly, false if one or more updates failed
 	 */
 	public boolean update() {
+		return update(null);
+	}
+
+	/**
+	 * Update the signs connected to this region that display one of the changed tags.
+	 * @param changedTags The tags of which the value might have changed, null to update all signs
+	 * @return true if all signs are updated correctly, false if one or more updates failed
+	 */
+	public boolean update(Set<String> changedTags) {
 		boolean result = true;
 		for(RegionSign sign : signs.values()) {
-			result = result & sign.update();
+			result = result & sign.update(changedTags);
 		}
+		plugin.getFileManager().updateSignSchedule(region);
 		return result;
 	}
 
+	/**
+	 * Forget what has been written to the signs, the next update writes all signs again.
+	 */
+	public void clearRendered() {
+		for(RegionSign sign : signs.values()) {
+			sign.clearRendered();
+		}
+	}
+
+	/**
+	 * Get the time at which the text on the signs will change because time passes (for the timeleft tag).
+	 * @return The time in milliseconds since epoch, or Long.MAX_VALUE if the text does not change by itself
+	 */
+	public long getNextChange() {
+		if(region.isDeleted() || !(region instanceof RentRegion) || !((RentRegion)region).isRented() || !needsPeriodicUpdate()) {
+			return Long.MAX_VALUE;
+		}
+		long now = Calendar.getInstance().getTimeInMillis();
+		long untilChange = Utils.millisUntilHumanFormatChange(((RentRegion)region).getRentedUntil() - now);
+		if(untilChange == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return now + untilChange;
+	}
+
 	/**
 	 * Check if any of the signs need periodic updating.
 	 * @return true if one or more of the signs need periodic updating, otherwise false
 	 */
 	public boolean needsPeriodicUpdate() {
+		RegionIndex.Entry indexEntry = region.getUnloadedEntry();
+		if(indexEntry != null) {
+			return indexEntry.isSignsTimeDependent();
+		}
 		boolean result = false;
 		for(RegionSign sign : signs.values()) {
 			result = result | sign.needsPeriodicUpdate();
@@ -154,8 +272,8 @@ public class SignsFeature extends RegionFeature {
 		}
 		// Add to the map
 		RegionSign sign = new RegionSign(region, i + "");
-		signs.put(sign.getStringLocation(), sign);
-		allSigns.put(sign.getStringLocation(), sign);
+		signs.put(sign.getKey(), sign);
+		allSigns.put(sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ(), sign);
 	}
 
 	/**
@@ -164,18 +282,11 @@ public class SignsFeature extends RegionFeature {
 	 * @return true if this region has a sign at the location, otherwise false
 	 */
 	public boolean isSignOfRegion(Location location) {
-		Set<String> signs;
-		if(region.getConfig().getConfigurationSection("general.signs") == null) {
-			return false;
-		}
-		signs = region.getConfig().getConfigurationSection("general.signs").getKeys(false);
-		for(String sign : signs) {
-			Location signLocation = Utils.configToLocation(region.getConfig().getConfigurationSection("general.signs." + sign + ".location"));
-			if(signLocation != null
-					&& signLocation.getWorld().equals(location.getWorld())
-					&& signLocation.getBlockX() == location.getBlockX()
-					&& signLocation.getBlockY() == location.getBlockY()
-					&& signLocation.getBlockZ() == location.getBlockZ()) {
+		for(RegionSign sign : signs.values()) {
+			if(sign.getX() == location.getBlockX()
+					&& sign.getY() == location.getBlockY()
+					&& sign.getZ() == location.getBlockZ()
+					&& location.getWorld().getName().equals(sign.getWorldName())) {
 				return true;
 			}
 		}
@@ -190,26 +301,99 @@ public class SignsFeature extends RegionFeature {
 
 		private GeneralRegion region;
 		private String key;
+		// Position parsed from the region config once, the location of a sign does not change
+		private boolean hasPosition;
+		private String worldName;
+		private int x;
+		private int y;
+		private int z;
+		// What has last been written to the sign block, renderedState is null if it should be written again
+		private String renderedState;
+		private String[] renderedLines;
+		private Material renderedMaterial;
+		private BlockFace renderedFacing;
 
 		public RegionSign(GeneralRegion region, String key) {
 			this.region = region;
 			this.key = key;
+			ConfigurationSection location = region.getConfig().getConfigurationSection("general.signs." + key + ".location");
+			hasPosition = location != null
+					&& location.isString("world")
+					&& location.isDouble("x")
+					&& location.isDouble("y")
+					&& location.isDouble("z");
+			if(hasPosition) {
+				worldName = location.getString("world");
+				x = (int)Math.floor(location.getDouble("x"));
+				y = (int)Math.floor(location.getDouble("y"));
+				z = (int)Math.floor(location.getDouble("z"));
+			}
+		}
+
+		/**
+		 * Constructor, for a sign registered from the region index.
+		 * @param region   The region the sign belongs to
+		 * @param position The position of the sign as stored in the index
+		 */
+		public RegionSign(GeneralRegion region, RegionIndex.SignPosition position) {
+			this.region = region;
+			this.key = position.getKey();
+			hasPosition = true;
+			worldName = position.getWorld();
+			x = position.getX();
+			y = position.getY();
+			z = position.getZ();
 		}
 
 		/**
 		 * Get the location of this sign.
-		 * @return The location of this sign
+		 * @return The location of this sign, or null if it does not have a proper location or the world is not loaded
 		 */
 		public Location getLocation() {
-			return Utils.configToLocation(region.getConfig().getConfigurationSection("general.signs." + key + ".location"));
+			if(!hasPosition) {
+				return null;
+			}
+			World world = Bukkit.getWorld(worldName);
+			if(world == null) {
+				return null;
+			}
+			return new Location(world, x, y, z);
 		}
 
 		/**
-		 * Location string to be used as key in maps.
-		 * @return Location string
+		 * Forget what has been written to the sign, the next update writes it again.
 		 */
-		public String getStringLocation() {
-			return locationToString(getLocation());
+		public void clearRendered() {
+			renderedState = null;
+			renderedLines = null;
+		}
+
+		/**
+		 * Get the key of this sign in the config of the region.
+		 * @return The key of this sign
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the name of the world this sign is in.
+		 * @return The name of the world
+		 */
+		public String getWorldName() {
+			return worldName;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public int getZ() {
+			return z;
 		}
 
 		/**
@@ -224,9 +408,10 @@ public class SignsFeature extends RegionFeature {
 		 * Remove this sign from the region.
 		 */
 		public void remove() {
+			pendingUpdates.remove(worldName, x, y, z, this);
 			getLocation().getBlock().setType(Material.AIR);
-			signs.remove(getStringLocation());
-			allSigns.remove(getStringLocation());
+			signs.remove(key);
+			allSigns.remove(worldName, x, y, z, this);
 			region.setSetting("general.signs." + key, null);
 		}
 
@@ -267,19 +452,43 @@ public class SignsFeature extends RegionFeature {
 		 * @return true if the update was successful, otherwise false
 		 */
 		public boolean update() {
+			return update(null);
+		}
+
+		/**
+		 * Update this sign if it displays one of the changed tags.
+		 * @param changedTags The tags of which the value might have changed, null to update the sign in any case
+		 * @return true if the update was successful or not required, otherwise false
+		 */
+		public boolean update(Set<String> changedTags) {
 			if(region.isDeleted()) {
 				return false;
 			}
 
+			World world = hasPosition ? Bukkit.getWorld(worldName) : null;
+			if(world == null) {
+				return false;
+			}
+			// Getting the block would load the chunk, update when the chunk is loaded by something else instead
+			if(!world.isChunkLoaded(x >> 4, z >> 4)) {
+				pendingUpdates.put(worldName, x, y, z, this);
+				return true;
+			}
+
 			YamlConfiguration regionConfig = region.getConfig();
 			ConfigurationSection signConfig = getProfile();
-			Block block = getLocation().getBlock();
-			if(signConfig == null || !signConfig.isSet(region.getState().getValue())) {
-				block.setType(Material.AIR);
+			String state = region.getState().getValue();
+			if(signConfig == null || !signConfig.isSet(state)) {
+				renderedState = null;
+				world.getBlockAt(x, y, z).setType(Material.AIR);
 				return true;
 			}
 
-			ConfigurationSection stateConfig = signConfig.getConfigurationSection(region.getState().getValue());
+			ConfigurationSection stateConfig = signConfig.getConfigurationSection(state);
+			if(changedTags != null && state.equals(renderedState) && !isAffected(stateConfig, changedTags)) {
+				return true;
+			}
+			Block block = world.getBlockAt(x, y, z);
 
 			// Get the lines
 			String[] signLines = new String[4];
@@ -289,10 +498,33 @@ public class SignsFeature extends RegionFeature {
 				signEmpty &= (signLines[i] == null || signLines[i].isEmpty());
 			}
 			if(signEmpty) {
+				renderedState = null;
 				block.setType(Material.AIR);
 				return true;
 			}
 
+			// Apply replacements and color
+			for(int i = 0; i < signLines.length; i++) {
+				if(signLines[i] == null) {
+					signLines[i] = "";
+					continue;
+				}
+				signLines[i] = Message.fromString(signLines[i]).replacements(region).getSingle();
+				signLines[i] = Utils.applyColors(signLines[i]);
+			}
+
+			// Skip the world write (block update and packets to players) if the sign already shows this
+			Material material = block.getType();
+			BlockFace facing = getFacing();
+			if(state.equals(renderedState)
+					&& material == renderedMaterial
+					&& (facing == null || facing == renderedFacing)
+					&& Arrays.equals(signLines, renderedLines)) {
+				signWritesSkipped++;
+				return true;
+			}
+			renderedState = null;
+
 			Sign signState = null;
 			// Place the sign back (with proper rotation and type) after it has been hidden or (indirectly) destroyed
 			if(block.getType() != Material.WALL_SIGN && block.getType() != Material.SIGN_POST) {
@@ -323,20 +555,34 @@ public class SignsFeature extends RegionFeature {
 				region.setSetting("general.signs." + key + ".facing", signData.getFacing().toString());
 			}
 
-			// Apply replacements and color and then set it on the sign
+			// Set the lines on the sign
 			for(int i = 0; i < signLines.length; i++) {
-				if(signLines[i] == null) {
-					signState.setLine(i, "");
-					continue;
-				}
-				signLines[i] = Message.fromString(signLines[i]).replacements(region).getSingle();
-				signLines[i] = Utils.applyColors(signLines[i]);
 				signState.setLine(i, signLines[i]);
 			}
 			signState.update();
+			signWritesApplied++;
+			renderedState = state;
+			renderedLines = signLines;
+			renderedMaterial = signState.getType();
+			renderedFacing = signData.getFacing();
 			return true;
 		}
 
+		/**
+		 * Check if the lines of a state are affected by changed tags.
+		 * @param stateConfig The section with the lines of the state
+		 * @param changedTags The tags of which the value might have changed
+		 * @return true if one of the lines uses a changed tag, otherwise false
+		 */
+		private boolean isAffected(ConfigurationSection stateConfig, Set<String> changedTags) {
+			for(int i = 1; i <= 4; i++) {
+				if(TagDependencies.isAffected(TagDependencies.get(stateConfig, "line" + i, region), changedTags)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		/**
 		 * Check if the sign needs to update periodically.
 		 * @return true if it needs periodic updates, otherwise false
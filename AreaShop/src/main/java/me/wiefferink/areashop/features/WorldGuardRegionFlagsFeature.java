@@ -9,40 +9,62 @@ import me.wiefferink.areashop.AreaShop;
 import me.wiefferink.areashop.events.notify.UpdateRegionEvent;
 import me.wiefferink.areashop.interfaces.RegionAccessSet;
 import me.wiefferink.areashop.regions.GeneralRegion;
+import me.wiefferink.areashop.tools.TagDependencies;
 import me.wiefferink.interactivemessenger.processing.Message;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.event.EventHandler;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.WeakHashMap;
 
 public class WorldGuardRegionFlagsFeature extends RegionFeature {
 
+	// State and WorldGuard region the flags of a region have last been applied to
+	private final Map<GeneralRegion, AppliedFlags> appliedFlags = new WeakHashMap<>();
 
 	@EventHandler
 	public void regionUpdate(UpdateRegionEvent event) {
-		updateRegionFlags(event.getRegion());
+		updateRegionFlags(event.getRegion(), event.getChangedTags());
 	}
 
 	/**
 	 * Set the region flags/options to the values of a ConfigurationSection.
-	 * @param region The region to update the flags for
+	 * @param region      The region to update the flags for
+	 * @param changedTags The tags of which the value might have changed, null to set all flags
 	 * @return true if the flags have been set correctly, otherwise false
 	 */
-	private boolean updateRegionFlags(GeneralRegion region) {
+	private boolean updateRegionFlags(GeneralRegion region, Set<String> changedTags) {
 		boolean result = true;
 
 		// Get section defining the region flag profile
 		ConfigurationSection flagProfileSection = region.getConfigurationSectionSetting("general.flagProfile", "flagProfiles");
 		if(flagProfileSection == null) {
+			appliedFlags.remove(region);
 			return false;
 		}
 
+		// Get the region
+		ProtectedRegion worldguardRegion = region.getRegion();
+		if(worldguardRegion == null) {
+			AreaShop.debug("Region '" + region.getName() + "' does not exist, setting flags failed");
+			appliedFlags.remove(region);
+			return false;
+		}
+
+		// Flags of other states might still be set, or the WorldGuard region has been replaced
+		String state = region.getState().getValue();
+		AppliedFlags applied = appliedFlags.remove(region);
+		if(applied == null || !applied.state.equals(state) || applied.worldguardRegion != worldguardRegion) {
+			changedTags = null;
+		}
+
 		// Region flags for all states
 		ConfigurationSection allFlags = flagProfileSection.getConfigurationSection("ALL");
 		if(allFlags != null) {
-			result = result && updateRegionFlags(region, allFlags);
+			result = result && updateRegionFlags(region, worldguardRegion, allFlags, changedTags);
 		}
 
 		// Region flags for the current state
@@ -54,32 +76,37 @@ public class WorldGuardRegionFlagsFeature extends RegionFeature {
 		}
 
 		if(stateFlags != null) {
-			result = result && updateRegionFlags(region, stateFlags);
+			result = result && updateRegionFlags(region, worldguardRegion, stateFlags, changedTags);
 		}
 
+		if(result) {
+			appliedFlags.put(region, new AppliedFlags(state, worldguardRegion));
+		}
 		return result;
 	}
 
 	/**
 	 * Set the region flags/options to the values of a ConfigurationSection.
-	 * @param region The region to update the flags for
-	 * @param flags  The flags to apply
+	 * @param region           The region to update the flags for
+	 * @param worldguardRegion The WorldGuard region of the region
+	 * @param flags            The flags to apply
+	 * @param changedTags      The tags of which the value might have changed, null to set all flags
 	 * @return true if the flags have been set correctly, otherwise false
 	 */
-	private boolean updateRegionFlags(GeneralRegion region, ConfigurationSection flags) {
+	private boolean updateRegionFlags(GeneralRegion region, ProtectedRegion worldguardRegion, ConfigurationSection flags, Set<String> changedTags) {
 		boolean result = true;
+		boolean changed = false;
 
 		Set<String> flagNames = flags.getKeys(false);
 		WorldGuardPlugin worldGuard = plugin.getWorldGuard();
 
-		// Get the region
-		ProtectedRegion worldguardRegion = region.getRegion();
-		if(worldguardRegion == null) {
-			AreaShop.debug("Region '" + region.getName() + "' does not exist, setting flags failed");
-			return false;
-		}
 		// Loop through all flags that are set in the config
 		for(String flagName : flagNames) {
+			// Flags that do not use any of the changed tags still have the correct value
+			if(!TagDependencies.isAffected(TagDependencies.get(flags, flagName, region), changedTags)) {
+				continue;
+			}
+			changed = true;
 			String value = Message.fromString(flags.getString(flagName)).replacements(region).getPlain();
 			// In the config normal Bukkit color codes are used, those only need to be translated on 5.X WorldGuard versions
 			if(plugin.getWorldGuard().getDescription().getVersion().startsWith("5.")) {
@@ -182,7 +209,9 @@ public class WorldGuardRegionFlagsFeature extends RegionFeature {
 		}
 		// Indicate that the regions needs to be saved
 		// TODO do we still need this? maybe only for old WorldGuard?
-		plugin.getFileManager().saveIsRequiredForRegionWorld(region.getWorldName());
+		if(changed) {
+			plugin.getFileManager().saveIsRequiredForRegionWorld(region.getWorldName());
+		}
 		return result;
 	}
 
@@ -262,4 +291,17 @@ public class WorldGuardRegionFlagsFeature extends RegionFeature {
 		result = result.replace("&r", "&x");
 		return result;
 	}
+
+	/**
+	 * Flags that have been applied to a WorldGuard region.
+	 */
+	private static class AppliedFlags {
+		private final String state;
+		private final ProtectedRegion worldguardRegion;
+
+		private AppliedFlags(String state, ProtectedRegion worldguardRegion) {
+			this.state = state;
+			this.worldguardRegion = worldguardRegion;
+		}
+	}
 }
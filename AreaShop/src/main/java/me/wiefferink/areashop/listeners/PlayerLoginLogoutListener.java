@@ -1,6 +1,7 @@
 package me.wiefferink.areashop.listeners;
 
 import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.managers.WorkManager;
 import me.wiefferink.areashop.regions.BuyRegion;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import me.wiefferink.areashop.regions.RentRegion;
@@ -15,7 +16,6 @@ import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerLoginEvent.Result;
 import org.bukkit.event.player.PlayerQuitEvent;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -42,6 +42,9 @@ public final class PlayerLoginLogoutListener implements Listener {
 			return;
 		}
 		final Player player = event.getPlayer();
+		// Permissions are resolved through Bukkit while online, cached offline results might be outdated later
+		plugin.getPermissionCache().invalidate(player.getUniqueId());
+		plugin.getNameCache().learn(player.getUniqueId(), player.getName(), true);
 
 		// Schedule task to check for notifications, prevents a lag spike at login
 		Do.syncTimerLater(25, 25, () -> {
@@ -53,17 +56,15 @@ public final class PlayerLoginLogoutListener implements Listener {
 				return false;
 			}
 			// Notify for rents that almost run out
-			for(RentRegion region : plugin.getFileManager().getRents()) {
-				if(region.isRenter(player)) {
-					String warningSetting = region.getStringSetting("rent.warningOnLoginTime");
-					if(warningSetting == null || warningSetting.isEmpty()) {
-						continue;
-					}
-					long warningTime = Utils.durationStringToLong(warningSetting);
-					if(region.getTimeLeft() < warningTime) {
-						// Send the warning message later to let it appear after general MOTD messages
-						AreaShop.getInstance().message(player, "rent-expireWarning", region);
-					}
+			for(RentRegion region : plugin.getFileManager().getRentsOwnedBy(player.getUniqueId())) {
+				String warningSetting = region.getStringSetting("rent.warningOnLoginTime");
+				if(warningSetting == null || warningSetting.isEmpty()) {
+					continue;
+				}
+				long warningTime = Utils.durationStringToLong(warningSetting);
+				if(region.getTimeLeft() < warningTime) {
+					// Send the warning message later to let it appear after general MOTD messages
+					AreaShop.getInstance().message(player, "rent-expireWarning", region);
 				}
 			}
 
@@ -78,15 +79,15 @@ public final class PlayerLoginLogoutListener implements Listener {
 				return true;
 			}
 
-			List<GeneralRegion> regions = new ArrayList<>();
-			for(GeneralRegion region : plugin.getFileManager().getRegions()) {
-				if(region.isOwner(player)) {
-					regions.add(region);
-				}
+			List<GeneralRegion> regions = plugin.getFileManager().getRegionsOwnedBy(player.getUniqueId());
+			for(GeneralRegion region : regions) {
+				// Owner is active again, postpone unrenting/selling because of inactivity
+				plugin.getFileManager().updateInactivitySchedule(region);
 			}
 
-			Do.forAll(
-				plugin.getConfig().getInt("nameupdate.regionsPerTick"),
+			plugin.getWorkManager().forAll(
+				"name update of " + player.getName(),
+				WorkManager.Priority.NORMAL,
 				regions,
 				region -> {
 					if(region instanceof BuyRegion) {
@@ -110,11 +111,13 @@ public final class PlayerLoginLogoutListener implements Listener {
 	@EventHandler(priority = EventPriority.MONITOR)
 	public void onPlayerLogout(PlayerQuitEvent event) {
 		updateLastActive(event.getPlayer());
+		plugin.getPermissionCache().invalidate(event.getPlayer().getUniqueId());
 	}
 
 	@EventHandler(priority = EventPriority.MONITOR)
 	public void onPlayerKick(PlayerKickEvent event) {
 		updateLastActive(event.getPlayer());
+		plugin.getPermissionCache().invalidate(event.getPlayer().getUniqueId());
 	}
 
 	/**
@@ -122,10 +125,8 @@ public final class PlayerLoginLogoutListener implements Listener {
 	 * @param player The player to update the active times for
 	 */
 	private void updateLastActive(Player player) {
-		for(GeneralRegion region : plugin.getFileManager().getRegions()) {
-			if(region.isOwner(player)) {
-				region.updateLastActiveTime();
-			}
+		for(GeneralRegion region : plugin.getFileManager().getRegionsOwnedBy(player.getUniqueId())) {
+			region.updateLastActiveTime();
 		}
 	}
 }
@@ -38,7 +38,7 @@ public final class SignBreakListener implements Listener {
 		// Check if it is a sign
 		if(block.getType() == Material.WALL_SIGN || block.getType() == Material.SIGN_POST) {
 			// Check if the rent sign is really the same as a saved rent
-			SignsFeature.RegionSign regionSign = SignsFeature.getSignByLocation(block.getLocation());
+			SignsFeature.RegionSign regionSign = SignsFeature.getSignByBlock(block);
 			if(regionSign == null) {
 				return;
 			}
@@ -61,7 +61,7 @@ public final class SignBreakListener implements Listener {
 	public void onIndirectSignBreak(BlockPhysicsEvent event) {
 		if(event.getBlock().getType() == Material.SIGN_POST || event.getBlock().getType() == Material.WALL_SIGN) {
 			// Check if the rent sign is really the same as a saved rent
-			if(SignsFeature.getSignByLocation(event.getBlock().getLocation()) != null) {
+			if(SignsFeature.getSignByBlock(event.getBlock()) != null) {
 				// Cancel the sign breaking, will create a floating sign but at least it is not disconnected/gone
 				event.setCancelled(true);
 			}
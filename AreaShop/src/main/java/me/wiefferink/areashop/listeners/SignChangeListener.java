@@ -1,6 +1,5 @@
 package me.wiefferink.areashop.listeners;
 
-import com.sk89q.worldedit.bukkit.selections.CuboidSelection;
 import com.sk89q.worldguard.protection.managers.RegionManager;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import me.wiefferink.areashop.AreaShop;
@@ -284,7 +283,7 @@ public final class SignChangeListener implements Listener {
 				}
 			} else {
 				// Get region by sign position
-				List<GeneralRegion> regions = Utils.getRegionsInSelection(new CuboidSelection(event.getBlock().getWorld(), event.getBlock().getLocation(), event.getBlock().getLocation()));
+				List<GeneralRegion> regions = Utils.getRegions(event.getBlock().getLocation());
 				if(regions.isEmpty()) {
 					plugin.message(player, "addsign-noRegions");
 					return;
@@ -37,7 +37,7 @@ public class SignClickListener implements Listener {
 		if((event.getAction() == Action.RIGHT_CLICK_BLOCK || event.getAction() == Action.LEFT_CLICK_BLOCK)
 				&& (block.getType() == Material.SIGN_POST || block.getType() == Material.WALL_SIGN)) {
 			// Check if the rent sign is really the same as a saved rent
-			SignsFeature.RegionSign regionSign = SignsFeature.getSignByLocation(block.getLocation());
+			SignsFeature.RegionSign regionSign = SignsFeature.getSignByBlock(block);
 			if(regionSign == null) {
 				return;
 			}
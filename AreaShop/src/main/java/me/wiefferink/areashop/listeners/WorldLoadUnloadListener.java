@@ -0,0 +1,52 @@
+package me.wiefferink.areashop.listeners;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.regions.GeneralRegion;
+import me.wiefferink.bukkitdo.Do;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Invalidates the worlds and WorldGuard regions that regions have resolved when worlds are loaded or unloaded.
+ * Also keeps the spatial index of the regions in sync with the loaded worlds.
+ */
+public final class WorldLoadUnloadListener implements Listener {
+	private AreaShop plugin;
+
+	/**
+	 * Constructor.
+	 * @param plugin The AreaShop plugin
+	 */
+	public WorldLoadUnloadListener(AreaShop plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Called when a world is loaded.
+	 * @param event The event
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onWorldLoad(WorldLoadEvent event) {
+		GeneralRegion.worldsChanged();
+		plugin.getFileManager().worldLoaded(event.getWorld().getName());
+	}
+
+	/**
+	 * Called when a world is about to be unloaded.
+	 * @param event The event
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onWorldUnload(WorldUnloadEvent event) {
+		GeneralRegion.worldsChanged();
+		plugin.getFileManager().worldUnloaded(event.getWorld().getName());
+		// The world is still loaded while the event is handled, regions using it now would cache and index it again
+		String world = event.getWorld().getName();
+		Do.syncLater(1, () -> {
+			GeneralRegion.worldsChanged();
+			plugin.getFileManager().worldUnloaded(world);
+		});
+	}
+}
@@ -19,6 +19,7 @@ import me.wiefferink.areashop.commands.InfoCommand;
 import me.wiefferink.areashop.commands.LinksignsCommand;
 import me.wiefferink.areashop.commands.MeCommand;
 import me.wiefferink.areashop.commands.MessageCommand;
+import me.wiefferink.areashop.commands.MigrateCommand;
 import me.wiefferink.areashop.commands.ReloadCommand;
 import me.wiefferink.areashop.commands.RentCommand;
 import me.wiefferink.areashop.commands.ResellCommand;
@@ -85,6 +86,7 @@ public class CommandManager extends Manager implements CommandExecutor, TabCompl
 		commands.add(new SetlandlordCommand());
 		commands.add(new MessageCommand());
 		commands.add(new ImportCommand());
+		commands.add(new MigrateCommand());
 
 		// Register commands in bukkit
 		plugin.getCommand("AreaShop").setExecutor(this);
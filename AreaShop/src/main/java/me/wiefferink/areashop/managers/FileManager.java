@@ -7,12 +7,22 @@ import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import me.wiefferink.areashop.AreaShop;
 import me.wiefferink.areashop.events.notify.AddedRegionEvent;
 import me.wiefferink.areashop.events.notify.DeletedRegionEvent;
+import me.wiefferink.areashop.features.SignsFeature;
 import me.wiefferink.areashop.regions.BuyRegion;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import me.wiefferink.areashop.regions.GeneralRegion.RegionEvent;
 import me.wiefferink.areashop.regions.GeneralRegion.RegionType;
+import me.wiefferink.areashop.regions.LimitGroup;
 import me.wiefferink.areashop.regions.RegionGroup;
 import me.wiefferink.areashop.regions.RentRegion;
+import me.wiefferink.areashop.storage.RegionIndex;
+import me.wiefferink.areashop.storage.RegionJournal;
+import me.wiefferink.areashop.storage.RegionSaveQueue;
+import me.wiefferink.areashop.storage.RegionStore;
+import me.wiefferink.areashop.storage.SqliteRegionStore;
+import me.wiefferink.areashop.storage.YamlRegionStore;
+import me.wiefferink.areashop.tools.DeadlineQueue;
+import me.wiefferink.areashop.tools.RegionSpatialIndex;
 import me.wiefferink.areashop.tools.Utils;
 import me.wiefferink.bukkitdo.Do;
 import org.bukkit.Bukkit;
@@ -22,6 +32,7 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
@@ -35,11 +46,16 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,6 +73,37 @@ public class FileManager extends Manager {
 	private YamlConfiguration defaultConfigFallback = null;
 	private boolean saveGroupsRequired = false;
 	private Set<String> worldRegionsRequireSaving;
+	private RegionSaveQueue saveQueue;
+	private RegionJournal journal;
+	private Set<String> invalidRegions;
+	// Regions deleted by the journal replay, removed from groups.yml once it has been loaded
+	private List<GeneralRegion> replayedDeletes;
+	private long settingsVersion = 0;
+	// Group membership index, lowercase region name to its groups (highest priority first) and group to lowercase region names
+	private Map<String, List<RegionGroup>> groupsByRegion;
+	private Map<RegionGroup, Set<String>> regionsByGroup;
+	// World name to the regions in that world
+	private Map<String, Set<GeneralRegion>> regionsByWorld;
+	// Bounding boxes of the regions by world, for location and area lookups
+	private RegionSpatialIndex spatialIndex;
+	// Regions by the UUID of their owner (renter or buyer) and by the UUIDs of their friends
+	private Map<UUID, Set<GeneralRegion>> regionsByOwner;
+	private Map<UUID, Set<GeneralRegion>> regionsByFriend;
+	// The owner and friends each region is listed under in the ownership index
+	private Map<GeneralRegion, UUID> indexedOwners;
+	private Map<GeneralRegion, Set<UUID>> indexedFriends;
+	// Number of rents and buys of each owner per limit group, and the limit groups each owned region is counted for
+	private Map<UUID, Map<String, LimitCounter>> limitCounters;
+	private Map<GeneralRegion, List<String>> countedLimitGroups;
+	private long limitCountersVersion = -1;
+	// Rented regions by the time their rent expires
+	private DeadlineQueue<RentRegion> rentExpirations;
+	// Rented regions by the time their next expiration warning should be sent
+	private DeadlineQueue<RentRegion> expirationWarnings;
+	// Owned regions by the time their owner has been inactive for too long
+	private DeadlineQueue<GeneralRegion> inactivityDeadlines;
+	// Regions by the time the text on their signs changes
+	private DeadlineQueue<GeneralRegion> signUpdates;
 
 	private HashMap<String, Integer> versions = null;
 	private String versionPath = null;
@@ -88,11 +135,29 @@ public class FileManager extends Manager {
 		regionsPath = plugin.getDataFolder() + File.separator + AreaShop.regionsFolder;
 		configPath = plugin.getDataFolder() + File.separator + "config.yml";
 		groups = new HashMap<>();
+		groupsByRegion = new HashMap<>();
+		regionsByGroup = new HashMap<>();
+		regionsByWorld = new HashMap<>();
+		spatialIndex = new RegionSpatialIndex();
+		regionsByOwner = new HashMap<>();
+		regionsByFriend = new HashMap<>();
+		indexedOwners = new HashMap<>();
+		indexedFriends = new HashMap<>();
+		limitCounters = new HashMap<>();
+		countedLimitGroups = new HashMap<>();
+		rentExpirations = new DeadlineQueue<>();
+		expirationWarnings = new DeadlineQueue<>();
+		inactivityDeadlines = new DeadlineQueue<>();
+		signUpdates = new DeadlineQueue<>();
 		groupsPath = plugin.getDataFolder() + File.separator + AreaShop.groupsFile;
 		defaultPath = plugin.getDataFolder() + File.separator + AreaShop.defaultFile;
 		versionPath = plugin.getDataFolder().getPath() + File.separator + AreaShop.versionFile;
 		schemFolder = plugin.getDataFolder() + File.separator + AreaShop.schematicFolder;
 		worldRegionsRequireSaving = new HashSet<>();
+		saveQueue = new RegionSaveQueue(new YamlRegionStore(new File(regionsPath)));
+		invalidRegions = new HashSet<>();
+		replayedDeletes = new ArrayList<>();
+		journal = new RegionJournal(new File(plugin.getDataFolder(), AreaShop.journalFolder));
 		File schemFile = new File(schemFolder);
 		if(!schemFile.exists() & !schemFile.mkdirs()) {
 			AreaShop.warn("Could not create schematic files directory: " + schemFile.getAbsolutePath());
@@ -110,7 +175,18 @@ public class FileManager extends Manager {
 			}
 		}
 		// Save files that need to be saved
-		saveRequiredFilesAtOnce();
+		long failures = saveQueue.getFailedCount();
+		flushRequiredFiles();
+		boolean saved = saveQueue.shutdown(Utils.getDurationFromSecondsOrString("saving.flushTimeout"));
+		if(!saved) {
+			AreaShop.warn("Stopping the region saving thread took too long, region files might be outdated");
+		}
+		saveQueue.getStore().close();
+		journal.close();
+		// The index is only correct if everything has been stored
+		if(saved && saveQueue.getFailedCount() == failures && plugin.getConfig().getBoolean("lazyLoading.enabled")) {
+			writeRegionIndex();
+		}
 	}
 
 
@@ -230,6 +306,62 @@ public class FileManager extends Manager {
 		return result;
 	}
 
+	/**
+	 * Get the regions that are rented or bought by a player.
+	 * @param player The UUID of the player
+	 * @return List of the regions owned by the player (it is safe to modify the list)
+	 */
+	public List<GeneralRegion> getRegionsOwnedBy(UUID player) {
+		Set<GeneralRegion> owned = regionsByOwner.get(player);
+		if(owned == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(owned);
+	}
+
+	/**
+	 * Get the regions that are rented by a player.
+	 * @param player The UUID of the player
+	 * @return List of the regions rented by the player
+	 */
+	public List<RentRegion> getRentsOwnedBy(UUID player) {
+		List<RentRegion> result = new ArrayList<>();
+		for(GeneralRegion region : regionsByOwner.getOrDefault(player, Collections.emptySet())) {
+			if(region instanceof RentRegion) {
+				result.add((RentRegion)region);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the regions that are bought by a player.
+	 * @param player The UUID of the player
+	 * @return List of the regions bought by the player
+	 */
+	public List<BuyRegion> getBuysOwnedBy(UUID player) {
+		List<BuyRegion> result = new ArrayList<>();
+		for(GeneralRegion region : regionsByOwner.getOrDefault(player, Collections.emptySet())) {
+			if(region instanceof BuyRegion) {
+				result.add((BuyRegion)region);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the regions a player is added to as friend.
+	 * @param player The UUID of the player
+	 * @return List of the regions the player is friend of (it is safe to modify the list)
+	 */
+	public List<GeneralRegion> getRegionsWithFriend(UUID player) {
+		Set<GeneralRegion> friendOf = regionsByFriend.get(player);
+		if(friendOf == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(friendOf);
+	}
+
 	/**
 	 * Get all regions.
 	 * @return List of all regions (it is safe to modify the list)
@@ -296,6 +428,7 @@ public class FileManager extends Manager {
 			return;
 		}
 		regions.put(rent.getName().toLowerCase(), rent);
+		indexRegion(rent);
 		Bukkit.getPluginManager().callEvent(new AddedRegionEvent(rent));
 	}
 
@@ -306,16 +439,7 @@ public class FileManager extends Manager {
 	public void addRent(RentRegion rent) {
 		addRentNoSave(rent);
 		rent.saveRequired();
-		markGroupsAutoDirty();
-	}
-
-	/**
-	 * Mark all RegionGroups that they should regenerate regions.
-	 */
-	public void markGroupsAutoDirty() {
-		for(RegionGroup group : getGroups()) {
-			group.autoDirty();
-		}
+		journal.recordCreate(rent.createSnapshot());
 	}
 
 	/**
@@ -328,6 +452,7 @@ public class FileManager extends Manager {
 			return;
 		}
 		regions.put(buy.getName().toLowerCase(), buy);
+		indexRegion(buy);
 		Bukkit.getPluginManager().callEvent(new AddedRegionEvent(buy));
 	}
 
@@ -338,7 +463,7 @@ public class FileManager extends Manager {
 	public void addBuy(BuyRegion buy) {
 		addBuyNoSave(buy);
 		buy.saveRequired();
-		markGroupsAutoDirty();
+		journal.recordCreate(buy.createSnapshot());
 	}
 
 	/**
@@ -351,6 +476,8 @@ public class FileManager extends Manager {
 		groupsConfig.set(lowGroup + ".name", group.getName());
 		groupsConfig.set(lowGroup + ".priority", 0);
 		saveGroupsIsRequired();
+		settingsChanged();
+		updateMemberships(group);
 	}
 
 	/**
@@ -421,18 +548,9 @@ public class FileManager extends Manager {
 			}
 			rent.resetRegionFlags();
 			regions.remove(rent.getLowerCaseName());
-			File file = new File(plugin.getDataFolder() + File.separator + AreaShop.regionsFolder + File.separator + rent.getLowerCaseName() + ".yml");
-			boolean deleted;
-			if(file.exists()) {
-				try {
-					deleted = file.delete();
-				} catch(Exception e) {
-					deleted = false;
-				}
-				if(!deleted) {
-					AreaShop.warn("File could not be deleted: " + file.toString());
-				}
-			}
+			unindexRegion(rent);
+			saveQueue.delete(rent.getLowerCaseName());
+			journal.recordDelete(rent.getLowerCaseName());
 			result = true;
 
 			// Broadcast event
@@ -468,6 +586,7 @@ public class FileManager extends Manager {
 				}
 			}
 			regions.remove(buy.getLowerCaseName());
+			unindexRegion(buy);
 			buy.resetRegionFlags();
 
 			// Removing from groups
@@ -476,18 +595,8 @@ public class FileManager extends Manager {
 			}
 
 			// Deleting the file
-			File file = new File(plugin.getDataFolder() + File.separator + AreaShop.regionsFolder + File.separator + buy.getLowerCaseName() + ".yml");
-			boolean deleted;
-			if(file.exists()) {
-				try {
-					deleted = file.delete();
-				} catch(Exception e) {
-					deleted = false;
-				}
-				if(!deleted) {
-					AreaShop.warn("File could not be deleted: " + file.toString());
-				}
-			}
+			saveQueue.delete(buy.getLowerCaseName());
+			journal.recordDelete(buy.getLowerCaseName());
 
 			result = true;
 
@@ -508,49 +617,100 @@ public class FileManager extends Manager {
 		groups.remove(group.getLowerCaseName());
 		groupsConfig.set(group.getLowerCaseName(), null);
 		saveGroupsIsRequired();
+		settingsChanged();
+		Set<String> members = regionsByGroup.remove(group);
+		if(members != null) {
+			for(String member : members) {
+				setGroupsOf(member, group, false);
+			}
+		}
 	}
 
 	/**
-	 * Update all signs that need periodic updating.
+	 * Update the signs of which the text changes at this time, updating the signs schedules the next update.
 	 */
 	public void performPeriodicSignUpdate() {
-		Do.forAll(
-			plugin.getConfig().getInt("signs.regionsPerTick"),
-			getRents(),
-			region -> {
-				if(region.needsPeriodicUpdate()) {
-					region.update();
-				}
-			}
+		plugin.getWorkManager().forAll(
+			"periodic sign update",
+			WorkManager.Priority.LOW,
+			signUpdates.pollDue(Calendar.getInstance().getTimeInMillis() + 1),
+			GeneralRegion::update
 		);
 	}
 
+	/**
+	 * Update the time at which the signs of a region should be updated, call after the signs have been updated.
+	 * @param region The region to update
+	 */
+	public void updateSignSchedule(GeneralRegion region) {
+		if(regions.get(region.getLowerCaseName()) != region) {
+			signUpdates.remove(region);
+			return;
+		}
+		long next = region.getSignsFeature().getNextChange();
+		if(next == Long.MAX_VALUE) {
+			signUpdates.remove(region);
+		} else {
+			signUpdates.schedule(region, next);
+		}
+	}
+
 	/**
 	 * Send out rent expire warnings.
 	 */
 	public void sendRentExpireWarnings() {
-		Do.forAll(
-			plugin.getConfig().getInt("expireWarning.regionsPerTick"),
-			getRents(),
-			RentRegion::sendExpirationWarnings
+		plugin.getWorkManager().forAll(
+			"expiration warnings",
+			WorkManager.Priority.NORMAL,
+			expirationWarnings.pollDue(Calendar.getInstance().getTimeInMillis() + 1),
+			rent -> {
+				rent.sendExpirationWarnings();
+				updateExpirationWarning(rent);
+			}
 		);
 	}
 
+	/**
+	 * Update the time at which the next expiration warning of a rent region should be sent.
+	 * @param rent The region to update
+	 */
+	private void updateExpirationWarning(RentRegion rent) {
+		if(regions.get(rent.getLowerCaseName()) != rent || rent.isDeleted() || !rent.isRented()) {
+			expirationWarnings.remove(rent);
+		} else {
+			// Uses the index entry of regions that are not loaded
+			long next = rent.getNextExpirationWarning();
+			if(next == Long.MAX_VALUE) {
+				expirationWarnings.remove(rent);
+			} else {
+				expirationWarnings.schedule(rent, next);
+			}
+		}
+	}
+
 	/**
 	 * Update regions in a task to minimize lag.
 	 * @param regions              Regions to update
 	 * @param confirmationReceiver The CommandSender that should be notified at completion
 	 */
 	public void updateRegions(final List<GeneralRegion> regions, final CommandSender confirmationReceiver) {
-		final int regionsPerTick = plugin.getConfig().getInt("update.regionsPerTick");
 		if(confirmationReceiver != null) {
-			plugin.message(confirmationReceiver, "reload-updateStart", regions.size(), regionsPerTick * 20);
+			plugin.message(confirmationReceiver, "reload-updateStart", regions.size());
 		}
-		Do.forAll(
-			regionsPerTick,
+		final long signWritesApplied = SignsFeature.getSignWritesApplied();
+		final long signWritesSkipped = SignsFeature.getSignWritesSkipped();
+		plugin.getWorkManager().forAll(
+			"region update",
+			WorkManager.Priority.HIGH,
 			regions,
-			GeneralRegion::update,
+			region -> {
+				// Explicit updates (reload, update commands) should also fix displays that have been changed by others
+				region.markAllChanged();
+				region.update();
+			},
 			() -> {
+				AreaShop.debug("Updated " + regions.size() + " regions, sign writes applied: " + (SignsFeature.getSignWritesApplied() - signWritesApplied)
+						+ ", skipped because unchanged: " + (SignsFeature.getSignWritesSkipped() - signWritesSkipped));
 				if(confirmationReceiver != null) {
 					plugin.message(confirmationReceiver, "reload-updateComplete");
 				}
@@ -581,6 +741,21 @@ public class FileManager extends Manager {
 		updateRegions(getRegions(), confirmationReceiver);
 	}
 
+	/**
+	 * Update the regions after starting the plugin.
+	 * Regions registered from the index are skipped, the index is only used when the regions and settings did not change since they were last updated.
+	 */
+	public void updateRegionsOnStartup() {
+		List<GeneralRegion> toUpdate = new ArrayList<>();
+		for(GeneralRegion region : getRegions()) {
+			if(region.isConfigLoaded()) {
+				toUpdate.add(region);
+			}
+		}
+		AreaShop.debug("Updating " + toUpdate.size() + " regions at startup, skipped " + (regions.size() - toUpdate.size()) + " regions registered from the index");
+		updateRegions(toUpdate, null);
+	}
+
 
 	/**
 	 * Save the group file to disk.
@@ -620,30 +795,63 @@ public class FileManager extends Manager {
 		}
 		this.saveWorldGuardRegions();
 
-		Do.forAll(
-			plugin.getConfig().getInt("saving.regionsPerTick"),
+		// Changes in the current journal segments are included in this save round
+		List<File> segments = journal.rotate();
+		long failures = saveQueue.getFailedCount();
+		plugin.getWorkManager().forAll(
+			"saving",
+			WorkManager.Priority.NORMAL,
 			getRegions(),
 			region -> {
 				if(region.isSaveRequired()) {
 					region.saveNow();
 				}
-			}
+			},
+			() -> saveQueue.afterPending(() -> {
+				if(saveQueue.getFailedCount() == failures) {
+					journal.deleteSegments(segments);
+				}
+			})
 		);
 	}
 
 	/**
-	 * Save all region related files directly (only for cases like onDisable()).
+	 * Save all region related files directly and wait until they are written to disk (only for cases like onDisable() and reloading).
 	 */
-	public void saveRequiredFilesAtOnce() {
+	public void flushRequiredFiles() {
 		if(isSaveGroupsRequired()) {
 			saveGroupsNow();
 		}
+		List<File> segments = journal.rotate();
+		long failures = saveQueue.getFailedCount();
 		for(GeneralRegion region : getRegions()) {
 			if(region.isSaveRequired()) {
 				region.saveNow();
 			}
 		}
 		this.saveWorldGuardRegions();
+		if(!saveQueue.flush(Utils.getDurationFromSecondsOrString("saving.flushTimeout"))) {
+			AreaShop.warn("Not all region files have been written to disk in time, " + saveQueue.getPendingCount() + " are still pending");
+		} else if(saveQueue.getFailedCount() == failures) {
+			// Everything is stored, the journal is not required anymore
+			journal.deleteSegments(segments);
+		}
+	}
+
+	/**
+	 * Get the journal that records changes to regions until they are saved.
+	 * @return The RegionJournal
+	 */
+	public RegionJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Get the queue that writes region files to disk.
+	 * @return The RegionSaveQueue
+	 */
+	public RegionSaveQueue getSaveQueue() {
+		return saveQueue;
 	}
 
 	/**
@@ -702,27 +910,125 @@ public class FileManager extends Manager {
 	}
 
 	/**
-	 * Unrent regions that have no time left, regions to check per tick is in the config.
+	 * Unrent regions that have no time left.
 	 */
 	public void checkRents() {
-		Do.forAll(
-			plugin.getConfig().getInt("expiration.regionsPerTick"),
-			getRents(),
-			RentRegion::checkExpiration
+		List<RentRegion> due = rentExpirations.pollDue(Calendar.getInstance().getTimeInMillis());
+		if(due.isEmpty()) {
+			return;
+		}
+		// Extending checks the permissions of the (mostly offline) renters, look those up asynchronously first
+		Set<OfflinePlayer> renters = new HashSet<>();
+		for(RentRegion rent : due) {
+			if(rent.isRented() && rent.getBooleanSetting("rent.autoExtend")) {
+				renters.add(Bukkit.getOfflinePlayer(rent.getRenter()));
+			}
+		}
+		plugin.getPermissionCache().prefetch(renters, getExtendPermissions(), () ->
+			plugin.getWorkManager().forAll(
+				"rent expiration",
+				WorkManager.Priority.HIGH,
+				due,
+				rent -> {
+					rent.checkExpiration();
+					// Check again next time if extending and unrenting did not happen
+					updateRentSchedule(rent);
+				}
+			)
 		);
 	}
 
 	/**
-	 * Check all regions and unrent/sell them if the player is inactive for too long.
+	 * Get the permissions that are checked when extending a rent.
+	 * @return The permissions, including those of the limit groups
+	 */
+	private List<String> getExtendPermissions() {
+		List<String> result = new ArrayList<>();
+		result.add("areashop.rent");
+		result.add("areashop.rentextendbypass");
+		result.add("areashop.renttimebypass");
+		result.add("areashop.limitbypass");
+		for(LimitGroup limitGroup : LimitGroup.getAll()) {
+			result.add(limitGroup.getPermission());
+		}
+		return result;
+	}
+
+	/**
+	 * Update the times at which a rent region should be checked for expiration and warnings, call after the renter or rentedUntil changed.
+	 * @param rent The region to update
+	 */
+	public void updateRentSchedule(RentRegion rent) {
+		if(regions.get(rent.getLowerCaseName()) != rent || rent.isDeleted() || !rent.isRented()) {
+			rentExpirations.remove(rent);
+		} else {
+			rentExpirations.schedule(rent, rent.getRentedUntil());
+		}
+		updateExpirationWarning(rent);
+	}
+
+	/**
+	 * Unrent/sell regions of which the owner has been inactive for too long.
 	 */
 	public void checkForInactiveRegions() {
-		Do.forAll(
-			plugin.getConfig().getInt("inactive.regionsPerTick"),
-			getRegions(),
-			GeneralRegion::checkInactive
+		plugin.getWorkManager().forAll(
+			"inactivity",
+			WorkManager.Priority.LOW,
+			inactivityDeadlines.pollDue(Calendar.getInstance().getTimeInMillis()),
+			region -> {
+				region.checkInactive();
+				// Check again next time if unrenting/selling did not happen (for example because the owner is an operator)
+				updateInactivitySchedule(region);
+			}
 		);
 	}
 
+	/**
+	 * Update the time at which a region should be checked for inactivity of its owner.
+	 * Call after the owner, the last active time or the inactivity settings changed.
+	 * @param region The region to update
+	 */
+	public void updateInactivitySchedule(GeneralRegion region) {
+		if(regions.get(region.getLowerCaseName()) != region || region.isDeleted() || region.getOwner() == null) {
+			inactivityDeadlines.remove(region);
+		} else {
+			// Uses the index entry of regions that are not loaded
+			long deadline = region.getInactivityDeadline();
+			if(deadline == Long.MAX_VALUE) {
+				inactivityDeadlines.remove(region);
+			} else {
+				inactivityDeadlines.schedule(region, deadline);
+			}
+		}
+	}
+
+	/**
+	 * Get the regions that will be unrented/sold first because their owner is inactive.
+	 * @param count The maximum number of regions to get
+	 * @return The regions, earliest first
+	 */
+	public List<GeneralRegion> getUpcomingInactiveRegions(int count) {
+		return inactivityDeadlines.getFirst(count);
+	}
+
+	/**
+	 * Get the time at which a region will be unrented/sold because its owner is inactive.
+	 * @param region The region to get the time for
+	 * @return The time in milliseconds since epoch, or null if the region is not scheduled
+	 */
+	public Long getInactivityDeadline(GeneralRegion region) {
+		return inactivityDeadlines.getDeadline(region);
+	}
+
+	/**
+	 * Update the inactivity schedule of all regions, used when the inactivity settings of groups changed.
+	 */
+	private void updateInactivitySchedules() {
+		for(GeneralRegion region : regions.values()) {
+			updateInactivitySchedule(region);
+		}
+	}
+
 
 	/**
 	 * Load the file with the versions, used to check if the other files need conversion.
@@ -835,6 +1141,7 @@ public class FileManager extends Manager {
 		} catch(IOException e) {
 			result = false;
 		}
+		settingsChanged();
 		return result;
 	}
 
@@ -889,6 +1196,8 @@ public class FileManager extends Manager {
 			result = false;
 		}
 		Utils.initialize(config);
+		// Compile the limit groups now to report problems while loading
+		LimitGroup.getAll();
 		return result;
 	}
 
@@ -915,6 +1224,25 @@ public class FileManager extends Manager {
 			RegionGroup group = new RegionGroup(plugin, groupName);
 			groups.put(groupName, group);
 		}
+		settingsChanged();
+		// Rebuild the membership index for the new groups
+		groupsByRegion.clear();
+		regionsByGroup.clear();
+		for(RegionGroup group : getGroups()) {
+			updateMemberships(group);
+		}
+		for(GeneralRegion region : replayedDeletes) {
+			for(RegionGroup group : getGroups()) {
+				group.removeMember(region);
+			}
+		}
+		replayedDeletes.clear();
+		recountLimits();
+		// Expiration warning profiles might come from the groups
+		for(RentRegion rent : getRents()) {
+			updateExpirationWarning(rent);
+		}
+		updateInactivitySchedules();
 		return result;
 	}
 
@@ -923,131 +1251,427 @@ public class FileManager extends Manager {
 	 */
 	public void loadRegionFiles() {
 		regions.clear();
-		final File file = new File(regionsPath);
-		if(!file.exists()) {
-			if(!file.mkdirs()) {
-				AreaShop.warn("Could not create region files directory: " + file.getAbsolutePath());
-				return;
-			}
-			plugin.setReady(true);
-		} else if(file.isDirectory()) {
-			loadRegionFilesNow();
+		groupsByRegion.clear();
+		regionsByGroup.clear();
+		regionsByWorld.clear();
+		spatialIndex.clear();
+		regionsByOwner.clear();
+		regionsByFriend.clear();
+		indexedOwners.clear();
+		indexedFriends.clear();
+		limitCounters.clear();
+		countedLimitGroups.clear();
+		rentExpirations.clear();
+		expirationWarnings.clear();
+		inactivityDeadlines.clear();
+		signUpdates.clear();
+		for(RegionGroup group : getGroups()) {
+			group.clearAutoRegions();
 		}
-	}
-
-	private void loadRegionFilesNow() {
-		File file = new File(regionsPath);
-		File[] regionFiles = file.listFiles();
-		if(regionFiles == null) {
-			plugin.setReady(true);
-			return;
+		invalidRegions.clear();
+		RegionStore store = getConfiguredStore();
+		if(!loadRegionIndex(store)) {
+			loadRegionFilesNow(store);
 		}
+		replayJournal();
+	}
 
-		List<String> noRegionType = new ArrayList<>();
-		List<String> noNamePaths = new ArrayList<>();
-		List<GeneralRegion> noWorld = new ArrayList<>();
-		List<GeneralRegion> noRegion = new ArrayList<>();
-		List<GeneralRegion> incorrectDuration = new ArrayList<>();
-		for(File regionFile : regionFiles) {
-			if(regionFile.exists() && regionFile.isFile()) {
-
-				// Load the region file from disk in UTF8 mode
-				YamlConfiguration config;
-				try(
-						InputStreamReader reader = new InputStreamReader(new FileInputStream(regionFile), Charsets.UTF_8)
-				) {
-					config = YamlConfiguration.loadConfiguration(reader);
-					if(config.getKeys(false).size() == 0) {
-						AreaShop.warn("Region file '" + regionFile.getName() + "' is empty, check for errors in the log.");
-					}
-				} catch(IOException e) {
-					AreaShop.warn("Something went wrong reading region file: " + regionFile.getAbsolutePath());
+	/**
+	 * Apply changes from the journal that did not reach the region store, for example because the server crashed.
+	 * Starts the journal if it is not running yet.
+	 */
+	private void replayJournal() {
+		List<File> segments = journal.isOpen() ? journal.rotate() : journal.getSegments();
+		List<RegionJournal.Record> records = journal.read(segments);
+		Set<GeneralRegion> changed = new HashSet<>();
+		journal.setRecording(false);
+		for(RegionJournal.Record record : records) {
+			GeneralRegion region = getRegion(record.getRegion());
+			if(record.getType() == RegionJournal.CREATE) {
+				// Only recreate regions that did not reach the store, otherwise the store has the newer state
+				if(region != null) {
 					continue;
 				}
-
-				// Construct the correct type of region
-				String type = config.getString("general.type");
-				GeneralRegion region;
-				if(RegionType.RENT.getValue().equals(type)) {
-					region = new RentRegion(config);
-				} else if(RegionType.BUY.getValue().equals(type)) {
-					region = new BuyRegion(config);
-				} else {
-					noNamePaths.add(regionFile.getPath());
+				YamlConfiguration config = new YamlConfiguration();
+				try {
+					config.loadFromString((String)record.getValue());
+				} catch(InvalidConfigurationException e) {
+					AreaShop.warn("Could not recover region " + record.getRegion() + " from the journal: " + e.getMessage());
 					continue;
 				}
-
-				// Check consistency
-				boolean added = false;
-				if(region.getName() == null) {
-					noNamePaths.add(regionFile.getPath());
-				} else if(region.getWorld() == null) {
-					noWorld.add(region);
-				} else if(region.getRegion() == null) {
-					noRegion.add(region);
-				} else if(region instanceof RentRegion && !Utils.checkTimeFormat(((RentRegion)region).getDurationString())) {
-					incorrectDuration.add(region);
-				} else {
-					added = true;
-					if(region instanceof RentRegion) {
-						addRentNoSave((RentRegion)region);
-					} else if(region instanceof BuyRegion) {
-						addBuyNoSave((BuyRegion)region);
+				region = constructRegion(config);
+				if(region == null || region.getName() == null || region.getWorld() == null || region.getRegion() == null) {
+					AreaShop.warn("Could not recover region " + record.getRegion() + " from the journal, its type, world or WorldGuard region is missing");
+					if(region != null) {
+						region.destroy();
 					}
+					continue;
 				}
-				if(!added) {
+				if(region instanceof RentRegion) {
+					addRentNoSave((RentRegion)region);
+				} else {
+					addBuyNoSave((BuyRegion)region);
+				}
+				changed.add(region);
+			} else if(record.getType() == RegionJournal.DELETE) {
+				if(region != null) {
+					region.setDeleted();
 					region.destroy();
+					for(RegionGroup group : getGroups()) {
+						group.removeMember(region);
+					}
+					unindexRegion(region);
+					regions.remove(region.getLowerCaseName());
+					saveQueue.delete(region.getLowerCaseName());
+					changed.remove(region);
+					// groups.yml is (re)loaded after the regions, remove the region from the new groups as well
+					replayedDeletes.add(region);
 				}
+			} else if(region != null) {
+				region.setSetting(record.getPath(), record.getValue());
+				changed.add(region);
+			}
+		}
+		journal.setRecording(true);
+
+		// Save the recovered changes, after that the replayed segments can go
+		for(GeneralRegion region : changed) {
+			region.saveNow();
+		}
+		if(!records.isEmpty()) {
+			AreaShop.info("Recovered " + records.size() + " changes to " + changed.size() + " regions from the journal");
+		}
+		long failures = saveQueue.getFailedCount();
+		saveQueue.afterPending(() -> {
+			if(saveQueue.getFailedCount() == failures) {
+				journal.deleteSegments(segments);
+			}
+		});
+
+		if(!journal.isOpen() && plugin.getConfig().getBoolean("journal.enabled")) {
+			try {
+				journal.open(Utils.getDurationFromSecondsOrString("journal.flushInterval"));
+			} catch(IOException e) {
+				AreaShop.error("Could not start the region journal, changes could be lost when the server crashes:", e.getMessage());
 			}
 		}
+	}
 
-		// All files are loaded, print problems to the console
-		if(!noRegionType.isEmpty()) {
-			AreaShop.warn("The following region files do no have a region type: " + Utils.createCommaSeparatedList(noRegionType));
+	/**
+	 * Construct the correct type of region from its configuration.
+	 * @param config The configuration of the region
+	 * @return The region, or null if the configuration does not have a valid region type
+	 */
+	private GeneralRegion constructRegion(YamlConfiguration config) {
+		String type = config.getString("general.type");
+		if(RegionType.RENT.getValue().equals(type)) {
+			return new RentRegion(config);
+		} else if(RegionType.BUY.getValue().equals(type)) {
+			return new BuyRegion(config);
 		}
+		return null;
+	}
 
-		if(!noNamePaths.isEmpty()) {
-			AreaShop.warn("The following region files do no have a name in their file: " + Utils.createCommaSeparatedList(noNamePaths));
+	/**
+	 * Get the store configured by the 'storage.type' setting, switches to it if it is not used yet.
+	 * Region files should be flushed before calling this.
+	 * @return The configured store, or the current one if the configured store could not be opened
+	 */
+	private RegionStore getConfiguredStore() {
+		RegionStore current = saveQueue.getStore();
+		String type = plugin.getConfig().getString("storage.type");
+		if(type == null || current.getType().equalsIgnoreCase(type)) {
+			return current;
+		}
+		RegionStore store = createStore(type);
+		if(store == null) {
+			AreaShop.warn("Continuing to use " + current.getType() + " storage for regions");
+			return current;
 		}
+		saveQueue.setStore(store);
+		current.close();
+		return store;
+	}
 
-		if(!noRegion.isEmpty()) {
-			List<String> noRegionNames = new ArrayList<>();
-			for(GeneralRegion region : noRegion) {
-				noRegionNames.add(region.getName());
+	/**
+	 * Open a region store.
+	 * @param type The type of store, 'yaml' or 'sqlite'
+	 * @return The store, or null if the type is unknown or the store could not be opened
+	 */
+	public RegionStore createStore(String type) {
+		if(YamlRegionStore.TYPE.equalsIgnoreCase(type)) {
+			return new YamlRegionStore(new File(regionsPath));
+		} else if(SqliteRegionStore.TYPE.equalsIgnoreCase(type)) {
+			try {
+				return new SqliteRegionStore(new File(plugin.getDataFolder(), AreaShop.regionsDatabase));
+			} catch(IOException e) {
+				AreaShop.error("Could not open SQLite region storage:", e.getMessage());
+				return null;
 			}
-			AreaShop.warn("AreaShop regions that are missing their WorldGuard region: " + Utils.createCommaSeparatedList(noRegionNames));
-			AreaShop.warn("Remove these regions from AreaShop with '/as del' or recreate their regions in WorldGuard.");
 		}
+		AreaShop.warn("Unknown region storage type '" + type + "', use 'yaml' or 'sqlite'");
+		return null;
+	}
 
-		boolean noWorldRegions = !noWorld.isEmpty();
-		while(!noWorld.isEmpty()) {
-			List<GeneralRegion> toDisplay = new ArrayList<>();
-			String missingWorld = noWorld.get(0).getWorldName();
-			toDisplay.add(noWorld.get(0));
-			for(int i = 1; i < noWorld.size(); i++) {
-				if(noWorld.get(i).getWorldName().equalsIgnoreCase(missingWorld)) {
-					toDisplay.add(noWorld.get(i));
-				}
+	/**
+	 * Load all regions from a store and register them.
+	 * @param store The store to load from
+	 */
+	private void loadRegionFilesNow(RegionStore store) {
+		// Parse the regions, optionally spread over multiple threads
+		long readStart = System.currentTimeMillis();
+		int threads = plugin.getConfig().getInt("loading.threads");
+		if(threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		Map<String, YamlConfiguration> configs;
+		try {
+			configs = store.loadAll(threads);
+		} catch(IOException e) {
+			AreaShop.error("Could not load regions from " + store.getType() + " storage:", e.getMessage());
+			plugin.setReady(true);
+			return;
+		}
+		long registerStart = System.currentTimeMillis();
+
+		RegionLoadResult result = new RegionLoadResult();
+		for(Map.Entry<String, YamlConfiguration> entry : configs.entrySet()) {
+			if(entry.getValue() != null) {
+				result.register(entry.getKey(), constructRegion(entry.getValue()), true);
 			}
-			List<String> noWorldNames = new ArrayList<>();
-			for(GeneralRegion region : noRegion) {
-				noWorldNames.add(region.getName());
+		}
+		result.report();
+		long end = System.currentTimeMillis();
+		AreaShop.info("Loaded " + regions.size() + " of " + configs.size() + " regions from " + store.getType() + " storage in " + (end - readStart) + "ms (reading: " + (registerStart - readStart) + "ms using " + threads + " thread(s), registering: " + (end - registerStart) + "ms)");
+		plugin.setReady(true);
+	}
+
+	/**
+	 * Register the regions from the index written at the last shutdown, their configuration is loaded when required.
+	 * The index is removed after reading it, it is only used for the startup directly after it has been written.
+	 * @param store The store the regions are in
+	 * @return true if the regions have been registered from the index, false if there is no valid index
+	 */
+	private boolean loadRegionIndex(RegionStore store) {
+		File indexFile = new File(plugin.getDataFolder(), AreaShop.regionsIndex);
+		RegionIndex index = null;
+		if(plugin.getConfig().getBoolean("lazyLoading.enabled")) {
+			try {
+				index = RegionIndex.read(indexFile, getIndexStamp(store));
+			} catch(IOException e) {
+				AreaShop.warn("Could not read the region index, loading all regions instead: " + e.getMessage());
 			}
-			AreaShop.warn("World " + missingWorld + " is not loaded, the following AreaShop regions are not functional now: " + Utils.createCommaSeparatedList(noWorldNames));
-			noWorld.removeAll(toDisplay);
 		}
-		if(noWorldRegions) {
-			AreaShop.warn("Remove these regions from AreaShop with '/as del' or load the world(s) on the server again.");
+		if(indexFile.exists() && !indexFile.delete()) {
+			AreaShop.warn("Could not delete the region index: " + indexFile.getAbsolutePath());
+		}
+		if(index == null) {
+			return false;
 		}
 
-		if(!incorrectDuration.isEmpty()) {
-			List<String> incorrectDurationNames = new ArrayList<>();
-			for(GeneralRegion region : incorrectDuration) {
-				incorrectDurationNames.add(region.getName());
+		long start = System.currentTimeMillis();
+		RegionLoadResult result = new RegionLoadResult();
+		for(RegionIndex.Entry entry : index.getEntries()) {
+			GeneralRegion region = null;
+			if(RegionType.RENT.getValue().equals(entry.getType())) {
+				region = new RentRegion(entry);
+			} else if(RegionType.BUY.getValue().equals(entry.getType())) {
+				region = new BuyRegion(entry);
+			}
+			result.register(entry.getName(), region, false);
+		}
+		// Signs showing the time left were correct when the index was written, only update those that changed since
+		long now = Calendar.getInstance().getTimeInMillis();
+		for(RentRegion rent : getRents()) {
+			if(!rent.isConfigLoaded()
+					&& rent.isRented()
+					&& rent.getSignsFeature().needsPeriodicUpdate()
+					&& Utils.millisUntilHumanFormatChange(rent.getRentedUntil() - index.getWritten()) <= now - index.getWritten()) {
+				signUpdates.schedule(rent, now);
 			}
-			AreaShop.warn("The following regions have an incorrect time format as duration: " + Utils.createCommaSeparatedList(incorrectDurationNames));
 		}
+		// Regions that had problems are checked completely
+		for(String name : index.getInvalid()) {
+			YamlConfiguration config = loadRegionConfig(name);
+			if(config != null) {
+				result.register(name, constructRegion(config), true);
+			}
+		}
+		result.report();
+		AreaShop.info("Registered " + regions.size() + " regions from the index in " + (System.currentTimeMillis() - start) + "ms, they are loaded from " + store.getType() + " storage when required");
 		plugin.setReady(true);
+		return true;
+	}
+
+	/**
+	 * Write the index of all regions, used for the next startup.
+	 */
+	private void writeRegionIndex() {
+		List<RegionIndex.Entry> entries = new ArrayList<>();
+		for(GeneralRegion region : getRegions()) {
+			entries.add(region.createIndexEntry());
+		}
+		try {
+			new RegionIndex(entries, invalidRegions).write(new File(plugin.getDataFolder(), AreaShop.regionsIndex), getIndexStamp(saveQueue.getStore()));
+		} catch(IOException e) {
+			AreaShop.warn("Could not write the region index, all regions will be loaded at the next startup: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Get the stamp to check if the region index is still valid.
+	 * The price in the index depends on settings, so changes to config.yml, default.yml and groups.yml also invalidate it.
+	 * @param store The store containing the regions
+	 * @return The stamp of the current state of the regions and settings
+	 */
+	private long getIndexStamp(RegionStore store) {
+		long result = store.getStamp();
+		for(String path : new String[]{configPath, defaultPath, groupsPath}) {
+			result = result * 31 + new File(path).lastModified();
+		}
+		return result;
+	}
+
+	/**
+	 * Load the configuration of a region that is not loaded yet or has been unloaded.
+	 * @param name The lowercase name of the region
+	 * @return The configuration, or null if it could not be loaded
+	 */
+	public YamlConfiguration loadRegionConfig(String name) {
+		try {
+			return saveQueue.getStore().load(name);
+		} catch(IOException e) {
+			AreaShop.warn("Could not load region " + name + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Unload the configuration of regions that have not been used recently, to keep at most 'lazyLoading.maxLoaded' loaded.
+	 */
+	public void unloadRegionConfigs() {
+		int maxLoaded = plugin.getConfig().getInt("lazyLoading.maxLoaded");
+		List<GeneralRegion> loaded = new ArrayList<>();
+		for(GeneralRegion region : regions.values()) {
+			if(region.isConfigLoaded()) {
+				loaded.add(region);
+			}
+		}
+		int toUnload = loaded.size() - maxLoaded;
+		if(toUnload <= 0) {
+			return;
+		}
+		loaded.sort(Comparator.comparingLong(GeneralRegion::getConfigAccess));
+		int unloaded = 0;
+		for(GeneralRegion region : loaded) {
+			if(unloaded >= toUnload) {
+				break;
+			}
+			if(region.unloadConfig()) {
+				unloaded++;
+			}
+		}
+		AreaShop.debug("Unloaded " + unloaded + " region configurations, " + (loaded.size() - unloaded) + " are loaded");
+	}
+
+	/**
+	 * Validates loaded regions, registers the correct ones and collects the problems of the others.
+	 */
+	private class RegionLoadResult {
+		private List<String> noRegionType = new ArrayList<>();
+		private List<String> noNamePaths = new ArrayList<>();
+		private List<GeneralRegion> noWorld = new ArrayList<>();
+		private List<GeneralRegion> noRegion = new ArrayList<>();
+		private List<GeneralRegion> incorrectDuration = new ArrayList<>();
+
+		/**
+		 * Check a region and register it if it is correct.
+		 * @param source        Description of where the region has been loaded from
+		 * @param region        The region to check, null if it does not have a valid type
+		 * @param checkDuration true to check the duration of rent regions, this requires their configuration
+		 */
+		private void register(String source, GeneralRegion region, boolean checkDuration) {
+			if(region == null) {
+				noRegionType.add(source);
+				return;
+			}
+
+			// Check consistency
+			boolean added = false;
+			if(region.getName() == null) {
+				noNamePaths.add(source);
+			} else if(region.getWorld() == null) {
+				noWorld.add(region);
+			} else if(region.getRegion() == null) {
+				noRegion.add(region);
+			} else if(checkDuration && region instanceof RentRegion && !Utils.checkTimeFormat(((RentRegion)region).getDurationString())) {
+				incorrectDuration.add(region);
+			} else {
+				added = true;
+				if(region instanceof RentRegion) {
+					addRentNoSave((RentRegion)region);
+				} else if(region instanceof BuyRegion) {
+					addBuyNoSave((BuyRegion)region);
+				}
+			}
+			if(!added) {
+				if(region.getName() != null) {
+					invalidRegions.add(region.getLowerCaseName());
+				}
+				region.destroy();
+			}
+		}
+
+		/**
+		 * Print the problems of the regions that could not be registered to the console.
+		 */
+		private void report() {
+			if(!noRegionType.isEmpty()) {
+				AreaShop.warn("The following region files do no have a region type: " + Utils.createCommaSeparatedList(noRegionType));
+			}
+
+			if(!noNamePaths.isEmpty()) {
+				AreaShop.warn("The following region files do no have a name in their file: " + Utils.createCommaSeparatedList(noNamePaths));
+			}
+
+			if(!noRegion.isEmpty()) {
+				List<String> noRegionNames = new ArrayList<>();
+				for(GeneralRegion region : noRegion) {
+					noRegionNames.add(region.getName());
+				}
+				AreaShop.warn("AreaShop regions that are missing their WorldGuard region: " + Utils.createCommaSeparatedList(noRegionNames));
+				AreaShop.warn("Remove these regions from AreaShop with '/as del' or recreate their regions in WorldGuard.");
+			}
+
+			boolean noWorldRegions = !noWorld.isEmpty();
+			while(!noWorld.isEmpty()) {
+				List<GeneralRegion> toDisplay = new ArrayList<>();
+				String missingWorld = noWorld.get(0).getWorldName();
+				toDisplay.add(noWorld.get(0));
+				for(int i = 1; i < noWorld.size(); i++) {
+					if(noWorld.get(i).getWorldName().equalsIgnoreCase(missingWorld)) {
+						toDisplay.add(noWorld.get(i));
+					}
+				}
+				List<String> noWorldNames = new ArrayList<>();
+				for(GeneralRegion region : toDisplay) {
+					noWorldNames.add(region.getName());
+				}
+				AreaShop.warn("World " + missingWorld + " is not loaded, the following AreaShop regions are not functional now: " + Utils.createCommaSeparatedList(noWorldNames));
+				noWorld.removeAll(toDisplay);
+			}
+			if(noWorldRegions) {
+				AreaShop.warn("Remove these regions from AreaShop with '/as del' or load the world(s) on the server again.");
+			}
+
+			if(!incorrectDuration.isEmpty()) {
+				List<String> incorrectDurationNames = new ArrayList<>();
+				for(GeneralRegion region : incorrectDuration) {
+					incorrectDurationNames.add(region.getName());
+				}
+				AreaShop.warn("The following regions have an incorrect time format as duration: " + Utils.createCommaSeparatedList(incorrectDurationNames));
+			}
+		}
 	}
 
 
@@ -1362,6 +1986,393 @@ public class FileManager extends Manager {
 		}
 	}
 
+	/**
+	 * Get the groups a region is member of.
+	 * @param region The region to get the groups for
+	 * @return The groups ordered by priority, highest first (unmodifiable)
+	 */
+	public List<RegionGroup> getGroupsOf(GeneralRegion region) {
+		List<RegionGroup> result = groupsByRegion.get(region.getLowerCaseName());
+		if(result == null) {
+			return Collections.emptyList();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the regions that are member of a group.
+	 * @param group The group to get the members of
+	 * @return The lowercase names of the member regions (unmodifiable)
+	 */
+	public Set<String> getMemberNames(RegionGroup group) {
+		Set<String> result = regionsByGroup.get(group);
+		if(result == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Update the membership index after a region has been added to or removed from a group.
+	 * @param group  The group that changed
+	 * @param region The region that might have been added or removed
+	 */
+	public void updateMembership(RegionGroup group, GeneralRegion region) {
+		// Groups that are not registered (yet) and removed regions are not indexed
+		if(groups.get(group.getLowerCaseName()) != group || regions.get(region.getLowerCaseName()) != region) {
+			return;
+		}
+		String name = region.getLowerCaseName();
+		boolean member = group.isMember(region);
+		Set<String> members = regionsByGroup.computeIfAbsent(group, key -> new HashSet<>());
+		if(member ? members.add(name) : members.remove(name)) {
+			setGroupsOf(name, group, member);
+		}
+	}
+
+	/**
+	 * Update the membership index after a world has been added to or removed from a group.
+	 * @param group The group that changed
+	 * @param world The name of the world that has been added or removed
+	 */
+	public void updateMemberships(RegionGroup group, String world) {
+		for(GeneralRegion region : getRegionsInWorld(world)) {
+			updateMembership(group, region);
+		}
+	}
+
+	/**
+	 * Get the regions in a world.
+	 * @param world The name of the world
+	 * @return The regions that are in the world (unmodifiable)
+	 */
+	public Set<GeneralRegion> getRegionsInWorld(String world) {
+		Set<GeneralRegion> result = regionsByWorld.get(world);
+		if(result == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Update the indexes after the world of a region changed.
+	 * @param region   The region that changed
+	 * @param oldWorld The world the region was in before
+	 */
+	public void regionWorldChanged(GeneralRegion region, String oldWorld) {
+		if(regions.get(region.getLowerCaseName()) != region) {
+			return;
+		}
+		Set<GeneralRegion> oldWorldRegions = regionsByWorld.get(oldWorld);
+		if(oldWorldRegions != null) {
+			oldWorldRegions.remove(region);
+		}
+		indexRegion(region);
+	}
+
+	/**
+	 * Update the owner and friends of a region in the ownership index, call after they changed.
+	 * @param region The region to update
+	 */
+	public void updateOwnership(GeneralRegion region) {
+		if(regions.get(region.getLowerCaseName()) != region) {
+			return;
+		}
+		removeOwnership(region);
+		UUID owner = region.getOwner();
+		if(owner != null) {
+			regionsByOwner.computeIfAbsent(owner, key -> new HashSet<>()).add(region);
+			indexedOwners.put(region, owner);
+			countLimits(region, owner);
+		}
+		Set<UUID> friends = new HashSet<>(region.getFriends());
+		if(!friends.isEmpty()) {
+			for(UUID friend : friends) {
+				regionsByFriend.computeIfAbsent(friend, key -> new HashSet<>()).add(region);
+			}
+			indexedFriends.put(region, friends);
+		}
+	}
+
+	/**
+	 * Remove a region from the ownership index.
+	 * @param region The region to remove
+	 */
+	private void removeOwnership(GeneralRegion region) {
+		UUID owner = indexedOwners.remove(region);
+		if(owner != null) {
+			uncountLimits(region, owner);
+			Set<GeneralRegion> owned = regionsByOwner.get(owner);
+			if(owned != null && owned.remove(region) && owned.isEmpty()) {
+				regionsByOwner.remove(owner);
+			}
+		}
+		Set<UUID> friends = indexedFriends.remove(region);
+		if(friends != null) {
+			for(UUID friend : friends) {
+				Set<GeneralRegion> friendOf = regionsByFriend.get(friend);
+				if(friendOf != null && friendOf.remove(region) && friendOf.isEmpty()) {
+					regionsByFriend.remove(friend);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Update the bounds of a region in the spatial index, in case the WorldGuard region has been redefined.
+	 * @param region The region to update
+	 */
+	public void updateRegionBounds(GeneralRegion region) {
+		if(regions.get(region.getLowerCaseName()) != region) {
+			return;
+		}
+		if(spatialIndex.update(region)) {
+			AreaShop.debug("Updated the bounds of region " + region.getName() + " in the spatial index");
+		}
+	}
+
+	/**
+	 * Get the regions that contain a location.
+	 * @param location The location to check
+	 * @return The regions containing the location, polygon regions are checked exactly
+	 */
+	public List<GeneralRegion> getRegionsAt(Location location) {
+		return spatialIndex.getRegions(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+	}
+
+	/**
+	 * Get the regions of which the bounding box overlaps with an area.
+	 * @param world   The world of the area
+	 * @param minimum The minimum corner of the area
+	 * @param maximum The maximum corner of the area
+	 * @return The regions overlapping with the area
+	 */
+	public List<GeneralRegion> getRegionsIn(World world, Location minimum, Location maximum) {
+		return spatialIndex.getRegions(world.getName(),
+				minimum.getBlockX(), minimum.getBlockY(), minimum.getBlockZ(),
+				maximum.getBlockX(), maximum.getBlockY(), maximum.getBlockZ());
+	}
+
+	/**
+	 * Add all regions that are member of a group to the membership index.
+	 * @param group The group to index
+	 */
+	private void updateMemberships(RegionGroup group) {
+		for(GeneralRegion region : regions.values()) {
+			updateMembership(group, region);
+		}
+	}
+
+	/**
+	 * Add a region to the world index and the group memberships.
+	 * @param region The region to index
+	 */
+	private void indexRegion(GeneralRegion region) {
+		if(region.getWorldName() != null) {
+			regionsByWorld.computeIfAbsent(region.getWorldName(), key -> new HashSet<>()).add(region);
+		}
+		spatialIndex.add(region);
+		updateOwnership(region);
+		if(region instanceof RentRegion) {
+			updateRentSchedule((RentRegion)region);
+		}
+		// Registers the signs (from the index if the region is not loaded) and schedules the first time their text changes
+		updateSignSchedule(region);
+		updateInactivitySchedule(region);
+		for(RegionGroup group : getGroups()) {
+			group.updateAutoRegion(region, true);
+			updateMembership(group, region);
+		}
+	}
+
+	/**
+	 * Add the regions of a world to the spatial index, call after the world has been loaded.
+	 * The WorldGuard regions of a world that is not loaded cannot be resolved, so these regions could not be indexed before.
+	 * @param world The name of the world
+	 */
+	public void worldLoaded(String world) {
+		for(GeneralRegion region : getRegionsInWorld(world)) {
+			spatialIndex.add(region);
+		}
+	}
+
+	/**
+	 * Remove the regions of a world from the spatial index, call when the world is unloaded.
+	 * @param world The name of the world
+	 */
+	public void worldUnloaded(String world) {
+		spatialIndex.removeWorld(world);
+	}
+
+	/**
+	 * Remove a region from the world index and the group memberships.
+	 * @param region The region to remove
+	 */
+	private void unindexRegion(GeneralRegion region) {
+		Set<GeneralRegion> worldRegions = regionsByWorld.get(region.getWorldName());
+		if(worldRegions != null) {
+			worldRegions.remove(region);
+		}
+		spatialIndex.remove(region);
+		removeOwnership(region);
+		if(region instanceof RentRegion) {
+			rentExpirations.remove((RentRegion)region);
+			expirationWarnings.remove((RentRegion)region);
+		}
+		inactivityDeadlines.remove(region);
+		signUpdates.remove(region);
+		for(RegionGroup group : getGroups()) {
+			group.updateAutoRegion(region, false);
+		}
+		List<RegionGroup> regionGroups = groupsByRegion.remove(region.getLowerCaseName());
+		if(regionGroups != null) {
+			for(RegionGroup group : regionGroups) {
+				regionsByGroup.get(group).remove(region.getLowerCaseName());
+			}
+		}
+	}
+
+	/**
+	 * Change the groups of a region in the membership index, the lists are replaced instead of modified.
+	 * @param region The lowercase name of the region
+	 * @param group  The group to add or remove
+	 * @param member true to add the group (or reorder it if already present), false to remove it
+	 */
+	private void setGroupsOf(String region, RegionGroup group, boolean member) {
+		List<RegionGroup> regionGroups = new ArrayList<>();
+		List<RegionGroup> current = groupsByRegion.get(region);
+		if(current != null) {
+			regionGroups.addAll(current);
+		}
+		regionGroups.remove(group);
+		if(member) {
+			regionGroups.add(group);
+		}
+		if(regionGroups.isEmpty()) {
+			groupsByRegion.remove(region);
+		} else {
+			regionGroups.sort((one, two) -> Integer.compare(two.getPriority(), one.getPriority()));
+			groupsByRegion.put(region, Collections.unmodifiableList(regionGroups));
+		}
+		// Limit groups can filter on region groups
+		GeneralRegion changed = regions.get(region);
+		UUID owner = changed == null ? null : indexedOwners.get(changed);
+		if(owner != null) {
+			uncountLimits(changed, owner);
+			countLimits(changed, owner);
+		}
+	}
+
+	/**
+	 * Get the number of regions of a type that a player has in a limit group.
+	 * @param player     The UUID of the player
+	 * @param limitGroup The limit group to get the number for
+	 * @param type       The type of regions to count, null to count both rents and buys
+	 * @return The number of regions the player has that match the filters of the limit group
+	 */
+	public int getLimitCount(UUID player, LimitGroup limitGroup, RegionType type) {
+		if(limitCountersVersion != LimitGroup.getVersion()) {
+			recountLimits();
+		}
+		Map<String, LimitCounter> counters = limitCounters.get(player);
+		LimitCounter counter = counters == null ? null : counters.get(limitGroup.getName());
+		if(counter == null) {
+			return 0;
+		}
+		if(type == RegionType.RENT) {
+			return counter.rents;
+		} else if(type == RegionType.BUY) {
+			return counter.buys;
+		}
+		return counter.rents + counter.buys;
+	}
+
+	/**
+	 * Count all owned regions in the limit groups again, required after the limit groups or group memberships changed.
+	 */
+	private void recountLimits() {
+		limitCounters.clear();
+		countedLimitGroups.clear();
+		limitCountersVersion = LimitGroup.getVersion();
+		for(Map.Entry<GeneralRegion, UUID> entry : indexedOwners.entrySet()) {
+			countLimits(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Add an owned region to the counters of the limit groups it matches.
+	 * @param region The region to count
+	 * @param owner  The owner of the region
+	 */
+	private void countLimits(GeneralRegion region, UUID owner) {
+		if(limitCountersVersion != LimitGroup.getVersion()) {
+			// Counters are rebuilt completely on the next query
+			return;
+		}
+		List<String> matched = new ArrayList<>();
+		boolean rent = region instanceof RentRegion;
+		for(LimitGroup limitGroup : LimitGroup.getAll()) {
+			if(limitGroup.matches(region.getWorldName(), getGroupsOf(region))) {
+				LimitCounter counter = limitCounters.computeIfAbsent(owner, key -> new HashMap<>()).computeIfAbsent(limitGroup.getName(), key -> new LimitCounter());
+				if(rent) {
+					counter.rents++;
+				} else {
+					counter.buys++;
+				}
+				matched.add(limitGroup.getName());
+			}
+		}
+		if(!matched.isEmpty()) {
+			countedLimitGroups.put(region, matched);
+		}
+	}
+
+	/**
+	 * Remove an owned region from the counters of the limit groups it has been counted for.
+	 * @param region The region to remove
+	 * @param owner  The owner the region has been counted for
+	 */
+	private void uncountLimits(GeneralRegion region, UUID owner) {
+		List<String> matched = countedLimitGroups.remove(region);
+		Map<String, LimitCounter> counters = limitCounters.get(owner);
+		if(matched == null || counters == null) {
+			return;
+		}
+		for(String limitGroup : matched) {
+			LimitCounter counter = counters.get(limitGroup);
+			if(counter == null) {
+				continue;
+			}
+			if(region instanceof RentRegion) {
+				counter.rents--;
+			} else {
+				counter.buys--;
+			}
+			if(counter.rents <= 0 && counter.buys <= 0) {
+				counters.remove(limitGroup);
+			}
+		}
+		if(counters.isEmpty()) {
+			limitCounters.remove(owner);
+		}
+	}
+
+	/**
+	 * Indicate that group settings, group memberships or default.yml changed.
+	 * This invalidates the cached setting sources of all regions.
+	 */
+	public void settingsChanged() {
+		settingsVersion++;
+	}
+
+	/**
+	 * Get the version of the group and default settings, changes each time settingsChanged() is called.
+	 * @return The current settings version
+	 */
+	public long getSettingsVersion() {
+		return settingsVersion;
+	}
+
 	/**
 	 * Get the settings of a group.
 	 * @param groupName Name of the group to get the settings from
@@ -1379,6 +2390,28 @@ public class FileManager extends Manager {
 	 */
 	public void setGroupSetting(RegionGroup group, String path, Object setting) {
 		groupsConfig.set(group.getName().toLowerCase() + "." + path, setting);
+		settingsChanged();
+		if(GeneralRegion.matchesPath(path, "priority")) {
+			// Order of the groups of the members has changed
+			for(String member : getMemberNames(group)) {
+				setGroupsOf(member, group, true);
+			}
+		}
+		if(GeneralRegion.matchesPath(path, "priority")
+				|| GeneralRegion.matchesPath(path, "rent.inactiveTimeUntilUnrent")
+				|| GeneralRegion.matchesPath(path, "buy.inactiveTimeUntilSell")) {
+			for(GeneralRegion region : group.getMemberRegions()) {
+				updateInactivitySchedule(region);
+			}
+		}
+	}
+
+	/**
+	 * Number of rents and buys of a player in a limit group.
+	 */
+	private static class LimitCounter {
+		private int rents;
+		private int buys;
 	}
 }
 
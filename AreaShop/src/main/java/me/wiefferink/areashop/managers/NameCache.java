@@ -0,0 +1,339 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Cache of player names by UUID and the other way around, so that rendering signs and messages never has to wait for Bukkit to resolve a player profile.
+ * Names are learned from players that login and from the names stored in region files, unknown players are resolved asynchronously.
+ * The least recently used players are removed when the cache exceeds nameCache.maxSize, the cache is stored in a compact file.
+ */
+public class NameCache extends Manager {
+
+	private static final int MAGIC = 0x41534e43; // ASNC
+	private static final int VERSION = 1;
+	// Time before trying to resolve a player again that could not be resolved
+	private static final long RETRY_DELAY = 10 * 60 * 1000;
+
+	private final File file;
+	// Access ordered, the least recently used player comes first
+	private final LinkedHashMap<UUID, String> names;
+	private final Map<String, UUID> uniqueIds;
+	// Players that are being resolved or failed to resolve, with the time a new attempt is allowed
+	private final Map<Object, Long> resolving;
+	private boolean saveRequired;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructor, loads the cache file.
+	 */
+	public NameCache() {
+		file = new File(plugin.getDataFolder(), AreaShop.nameCacheFile);
+		names = new LinkedHashMap<UUID, String>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+				if(size() > getMaxSize()) {
+					uniqueIds.remove(eldest.getValue().toLowerCase(), eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+		uniqueIds = new HashMap<>();
+		resolving = new HashMap<>();
+		load();
+	}
+
+	@Override
+	public void shutdown() {
+		if(saveRequired) {
+			List<Map.Entry<UUID, String>> snapshot = getSnapshot();
+			try {
+				write(snapshot);
+			} catch(IOException e) {
+				AreaShop.warn("Could not save the player name cache to " + file.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Get the name of a player from the cache, without resolving it.
+	 * @param uuid The UUID of the player
+	 * @return The name of the player, or null if it is not cached
+	 */
+	public synchronized String getName(UUID uuid) {
+		if(uuid == null) {
+			return null;
+		}
+		String result = names.get(uuid);
+		if(result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the name of a player from the cache, resolving it asynchronously if it is not cached.
+	 * Use this while rendering signs and messages, the name is available in a later call when it has been resolved.
+	 * @param uuid The UUID of the player
+	 * @return The name of the player, or null if it is not cached yet
+	 */
+	public String getNameOrRequest(UUID uuid) {
+		String result = getName(uuid);
+		if(result == null && uuid != null) {
+			resolveAsync(uuid, () -> Bukkit.getOfflinePlayer(uuid));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the name of a player, resolving it through Bukkit if it is not cached.
+	 * Resolving a UUID only uses data of the server itself, but might still read from disk.
+	 * @param uuid The UUID of the player
+	 * @return The name of the player, or null if the player is unknown
+	 */
+	public String resolveName(UUID uuid) {
+		String result = getName(uuid);
+		if(result == null && uuid != null) {
+			OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
+			result = player.getName();
+			learn(uuid, result, true);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the UUID of a player from the cache, resolving it asynchronously if it is not cached.
+	 * Resolving a name through Bukkit can require a web request, therefore this never happens on the calling thread.
+	 * @param name The name of the player
+	 * @return The UUID of the player, or null if it is not cached yet
+	 */
+	@SuppressWarnings("deprecation") // Fake deprecation by Bukkit to inform developers, method will stay
+	public UUID getUniqueIdOrRequest(String name) {
+		if(name == null || name.isEmpty()) {
+			return null;
+		}
+		UUID result;
+		synchronized(this) {
+			result = uniqueIds.get(name.toLowerCase());
+			if(result != null) {
+				hits++;
+				names.get(result); // Mark as used
+				return result;
+			}
+			misses++;
+		}
+		Player online = Bukkit.getPlayerExact(name);
+		if(online != null) {
+			learn(online.getUniqueId(), online.getName(), true);
+			return online.getUniqueId();
+		}
+		resolveAsync(name.toLowerCase(), () -> Bukkit.getOfflinePlayer(name));
+		return null;
+	}
+
+	/**
+	 * Add the name of a player to the cache.
+	 * @param uuid      The UUID of the player
+	 * @param name      The name of the player
+	 * @param overwrite true to replace the cached name (name is current), false to only add it when there is none (name might be outdated)
+	 */
+	public synchronized void learn(UUID uuid, String name, boolean overwrite) {
+		if(uuid == null || name == null || name.isEmpty()) {
+			return;
+		}
+		String previous = names.get(uuid);
+		if(name.equals(previous) || (previous != null && !overwrite)) {
+			return;
+		}
+		if(previous != null) {
+			uniqueIds.remove(previous.toLowerCase(), uuid);
+		}
+		names.put(uuid, name);
+		uniqueIds.put(name.toLowerCase(), uuid);
+		saveRequired = true;
+	}
+
+	/**
+	 * Save the cache file asynchronously if it changed.
+	 */
+	public void saveIfRequired() {
+		if(!saveRequired) {
+			return;
+		}
+		List<Map.Entry<UUID, String>> snapshot = getSnapshot();
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				try {
+					write(snapshot);
+				} catch(IOException e) {
+					AreaShop.warn("Could not save the player name cache to " + file.getAbsolutePath() + ": " + e.getMessage());
+				}
+			}
+		}.runTaskAsynchronously(plugin);
+	}
+
+	/**
+	 * Get the number of cached players.
+	 * @return The number of players
+	 */
+	public synchronized int size() {
+		return names.size();
+	}
+
+	/**
+	 * Get the number of lookups that have been answered from the cache.
+	 * @return The number of cache hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of lookups that were not cached.
+	 * @return The number of cache misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Resolve a player asynchronously and add it to the cache.
+	 * @param key      The key of the lookup, to prevent resolving the same player multiple times at once
+	 * @param resolver Lookup of the player
+	 */
+	private void resolveAsync(Object key, Supplier<OfflinePlayer> resolver) {
+		synchronized(this) {
+			Long retryAt = resolving.get(key);
+			if(retryAt != null && retryAt > System.currentTimeMillis()) {
+				return;
+			}
+			resolving.put(key, Long.MAX_VALUE);
+		}
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				boolean resolved = false;
+				try {
+					OfflinePlayer player = resolver.get();
+					if(player != null && player.getName() != null) {
+						learn(player.getUniqueId(), player.getName(), true);
+						resolved = true;
+					}
+				} catch(RuntimeException e) {
+					AreaShop.debug("Resolving player " + key + " failed: " + ExceptionUtils.getStackTrace(e));
+				}
+				synchronized(NameCache.this) {
+					if(resolved) {
+						resolving.remove(key);
+					} else {
+						resolving.put(key, System.currentTimeMillis() + RETRY_DELAY);
+					}
+				}
+			}
+		}.runTaskAsynchronously(plugin);
+	}
+
+	/**
+	 * Get a copy of the cached players and mark the cache as saved.
+	 * @return The cached players, least recently used first
+	 */
+	private synchronized List<Map.Entry<UUID, String>> getSnapshot() {
+		saveRequired = false;
+		List<Map.Entry<UUID, String>> result = new ArrayList<>(names.size());
+		for(Map.Entry<UUID, String> entry : names.entrySet()) {
+			result.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the maximum number of cached players.
+	 * @return The maximum size
+	 */
+	private int getMaxSize() {
+		// The cache file is loaded before the config
+		if(plugin.getFileManager() == null || plugin.getConfig() == null) {
+			return Integer.MAX_VALUE;
+		}
+		return Math.max(1, plugin.getConfig().getInt("nameCache.maxSize"));
+	}
+
+	/**
+	 * Load the cache file.
+	 */
+	private void load() {
+		if(!file.isFile()) {
+			return;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				AreaShop.debug("Player name cache " + file.getAbsolutePath() + " has an unknown format, starting with an empty cache");
+				return;
+			}
+			int size = in.readInt();
+			for(int i = 0; i < size; i++) {
+				learn(new UUID(in.readLong(), in.readLong()), in.readUTF(), true);
+			}
+			saveRequired = false;
+			AreaShop.debug("Loaded " + names.size() + " player names from the name cache");
+		} catch(IOException e) {
+			AreaShop.warn("Could not read the player name cache " + file.getAbsolutePath() + ", starting with an empty cache: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the cache file.
+	 * @param entries The cached players, least recently used first
+	 * @throws IOException when writing failed
+	 */
+	private void write(List<Map.Entry<UUID, String>> entries) throws IOException {
+		// Lock on the file instead of the cache, lookups should not wait for the disk
+		synchronized(file) {
+			File temporary = new File(file.getPath() + ".tmp");
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+				for(Map.Entry<UUID, String> entry : entries) {
+					out.writeLong(entry.getKey().getMostSignificantBits());
+					out.writeLong(entry.getKey().getLeastSignificantBits());
+					out.writeUTF(entry.getValue());
+				}
+			}
+			try {
+				Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.tools.Utils;
+import me.wiefferink.bukkitdo.Do;
+import net.milkbowl.vault.permission.Permission;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches permissions of offline players, which are resolved through Vault.
+ * Depending on the permissions plugin a lookup can require disk or database access, results are kept for a while (permissionCache.offlineTTL).
+ * Batch jobs can prefetch the permissions they need asynchronously, so the lookups do not happen on the main thread.
+ * Permissions of online players are not cached, Bukkit has those in memory already.
+ */
+public class PermissionCache extends Manager {
+
+	private final Map<UUID, Map<String, CachedPermission>> cache;
+	// Time that results are cached in milliseconds, 0 or lower to disable caching
+	private long ttl;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructor.
+	 */
+	public PermissionCache() {
+		cache = new ConcurrentHashMap<>();
+		loadSettings();
+	}
+
+	@Override
+	public void shutdown() {
+		cache.clear();
+	}
+
+	/**
+	 * Check for a permission of an offline player, using the cached result if it is still valid.
+	 * @param offlinePlayer The player to check
+	 * @param provider      The Vault permission provider
+	 * @param permission    The permission to check
+	 * @return true if the player has the permission, otherwise false
+	 */
+	public boolean hasPermission(OfflinePlayer offlinePlayer, Permission provider, String permission) {
+		long now = System.currentTimeMillis();
+		Map<String, CachedPermission> permissions = cache.get(offlinePlayer.getUniqueId());
+		CachedPermission cached = permissions == null ? null : permissions.get(permission);
+		if(cached != null && cached.expires > now) {
+			hits++;
+			return cached.value;
+		}
+		misses++;
+		boolean result = provider.playerHas(null, offlinePlayer, permission);
+		store(offlinePlayer.getUniqueId(), permission, result, now + ttl);
+		return result;
+	}
+
+	/**
+	 * Lookup permissions of offline players asynchronously, to have them cached when a batch job needs them.
+	 * Online players and permissions that are cached already are skipped.
+	 * @param players     The players to lookup the permissions for
+	 * @param permissions The permissions to lookup
+	 * @param onDone      Runnable to execute on the main thread when the lookups are done, or null
+	 */
+	public void prefetch(Collection<? extends OfflinePlayer> players, Collection<String> permissions, Runnable onDone) {
+		Permission provider = plugin.getPermissionProvider();
+		long now = System.currentTimeMillis();
+		Map<OfflinePlayer, List<String>> lookups = new HashMap<>();
+		if(provider != null && ttl > 0) {
+			for(OfflinePlayer player : players) {
+				if(player.getPlayer() != null) {
+					continue;
+				}
+				Map<String, CachedPermission> cached = cache.get(player.getUniqueId());
+				for(String permission : permissions) {
+					CachedPermission entry = cached == null ? null : cached.get(permission);
+					if(entry == null || entry.expires <= now) {
+						lookups.computeIfAbsent(player, key -> new ArrayList<>()).add(permission);
+					}
+				}
+			}
+		}
+		if(lookups.isEmpty()) {
+			if(onDone != null) {
+				onDone.run();
+			}
+			return;
+		}
+
+		long expires = now + ttl;
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				int count = 0;
+				try {
+					for(Map.Entry<OfflinePlayer, List<String>> lookup : lookups.entrySet()) {
+						for(String permission : lookup.getValue()) {
+							store(lookup.getKey().getUniqueId(), permission, provider.playerHas(null, lookup.getKey(), permission), expires);
+							count++;
+						}
+					}
+				} catch(RuntimeException e) {
+					AreaShop.warn("Looking up permissions of offline players failed, they will be checked on the main thread: " + ExceptionUtils.getStackTrace(e));
+				}
+				AreaShop.debug("Prefetched " + count + " permissions of " + lookups.size() + " offline players in " + (System.currentTimeMillis() - start) + "ms");
+				if(onDone != null) {
+					Do.sync(onDone);
+				}
+			}
+		}.runTaskAsynchronously(plugin);
+	}
+
+	/**
+	 * Read the settings of the cache from the config.yml file, call after it has been (re)loaded.
+	 */
+	public void loadSettings() {
+		ttl = Utils.getDurationFromSecondsOrString("permissionCache.offlineTTL");
+	}
+
+	/**
+	 * Remove the cached permissions of a player, call when the permissions might have changed (for example when joining or leaving).
+	 * @param player The UUID of the player
+	 */
+	public void invalidate(UUID player) {
+		cache.remove(player);
+	}
+
+	/**
+	 * Remove all cached permissions.
+	 */
+	public void invalidateAll() {
+		cache.clear();
+	}
+
+	/**
+	 * Get the number of permission checks that used a cached result.
+	 * @return The number of cache hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of permission checks that required a lookup through Vault.
+	 * @return The number of cache misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Store the result of a lookup, can be called from any thread.
+	 * @param player     The UUID of the player
+	 * @param permission The permission
+	 * @param value      true if the player has the permission, otherwise false
+	 * @param expires    The time at which the result is not valid anymore
+	 */
+	private void store(UUID player, String permission, boolean value, long expires) {
+		if(expires <= System.currentTimeMillis()) {
+			return;
+		}
+		cache.computeIfAbsent(player, key -> new ConcurrentHashMap<>()).put(permission, new CachedPermission(value, expires));
+	}
+
+	/**
+	 * Result of a permission lookup.
+	 */
+	private static class CachedPermission {
+		private final boolean value;
+		private final long expires;
+
+		private CachedPermission(boolean value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
@@ -124,7 +124,7 @@ public class SignLinkerManager extends Manager implements Listener {
 					return;
 				}
 
-				SignsFeature.RegionSign regionSign = SignsFeature.getSignByLocation(block.getLocation());
+				SignsFeature.RegionSign regionSign = SignsFeature.getSignByBlock(block);
 				if(regionSign != null) {
 					plugin.message(player, "linksigns-alreadyRegistered", regionSign.getRegion());
 					return;
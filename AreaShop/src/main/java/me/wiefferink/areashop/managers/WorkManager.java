@@ -0,0 +1,362 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs background work on regions (saving, expiration, sign updates, etc.) spread over ticks.
+ * Instead of a fixed number of regions per tick, each tick gets a time budget that shrinks when the server is lagging.
+ * When multiple jobs are queued the budget is shared by their priority, a job that is running long cannot starve the others.
+ */
+public class WorkManager extends Manager {
+
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	private final List<Job> jobs;
+	private final BukkitTask task;
+
+	private long lastTick;
+	private double averageTickNanos;
+	private long budgetNanos;
+	private long lastUsedNanos;
+	private double virtualClock;
+
+	/**
+	 * Priority of a job, determines which part of the budget a job gets when multiple jobs are queued.
+	 */
+	public enum Priority {
+		LOW(1),
+		NORMAL(2),
+		HIGH(4);
+
+		private final int weight;
+
+		Priority(int weight) {
+			this.weight = weight;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+	}
+
+	/**
+	 * Piece of work that is executed in small steps.
+	 */
+	@FunctionalInterface
+	public interface Task {
+		/**
+		 * Execute the next step of the work.
+		 * @return true if there is more work to do, false if the work is complete
+		 */
+		boolean step();
+	}
+
+	/**
+	 * Constructor, starts measuring ticks.
+	 */
+	public WorkManager() {
+		jobs = new ArrayList<>();
+		lastTick = System.nanoTime();
+		averageTickNanos = -1;
+		task = new BukkitRunnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}.runTaskTimer(plugin, 1, 1);
+	}
+
+	@Override
+	public void shutdown() {
+		task.cancel();
+		if(!jobs.isEmpty()) {
+			AreaShop.debug("WorkManager: dropping " + jobs.size() + " unfinished jobs at shutdown");
+		}
+		jobs.clear();
+	}
+
+	/**
+	 * Execute an action for all items in a collection, spread over ticks.
+	 * @param name     The name of the job, used in debug messages
+	 * @param priority The priority of the job
+	 * @param items    The items to execute the action for (copied)
+	 * @param action   The action to execute for each item
+	 * @param <T>      The type of the items
+	 * @return The submitted job
+	 */
+	public <T> Job forAll(String name, Priority priority, Collection<T> items, Consumer<T> action) {
+		return forAll(name, priority, items, action, null);
+	}
+
+	/**
+	 * Execute an action for all items in a collection, spread over ticks.
+	 * @param name     The name of the job, used in debug messages
+	 * @param priority The priority of the job
+	 * @param items    The items to execute the action for (copied)
+	 * @param action   The action to execute for each item
+	 * @param onDone   Runnable to execute when all items have been handled, or null
+	 * @param <T>      The type of the items
+	 * @return The submitted job
+	 */
+	public <T> Job forAll(String name, Priority priority, Collection<T> items, Consumer<T> action, Runnable onDone) {
+		Iterator<T> iterator = new ArrayList<>(items).iterator();
+		Job job = new Job(name, priority, () -> {
+			if(iterator.hasNext()) {
+				action.accept(iterator.next());
+			}
+			return iterator.hasNext();
+		}, onDone, items.size());
+		submit(job);
+		return job;
+	}
+
+	/**
+	 * Execute a task in steps spread over ticks.
+	 * @param name     The name of the job, used in debug messages
+	 * @param priority The priority of the job
+	 * @param task     The task to execute
+	 * @param onDone   Runnable to execute when the task is complete, or null
+	 * @return The submitted job
+	 */
+	public Job submit(String name, Priority priority, Task task, Runnable onDone) {
+		Job job = new Job(name, priority, task, onDone, -1);
+		submit(job);
+		return job;
+	}
+
+	/**
+	 * Add a job to the queue.
+	 * @param job The job to add
+	 */
+	private void submit(Job job) {
+		if(job.total == 0) {
+			// Nothing to do, complete directly like an empty loop would
+			job.complete();
+			return;
+		}
+		// Start at the current virtual time, otherwise a new job would get the complete budget until it caught up
+		job.virtualTime = virtualClock;
+		jobs.add(job);
+	}
+
+	/**
+	 * Called each tick, measures the tick duration and executes jobs within the budget.
+	 */
+	private void tick() {
+		long now = System.nanoTime();
+		long targetTickNanos = getTargetTickNanos();
+		long tickNanos = Math.min(now - lastTick, 20 * targetTickNanos); // Limit the effect of a single long pause
+		lastTick = now;
+		if(averageTickNanos < 0) {
+			averageTickNanos = targetTickNanos;
+		}
+		averageTickNanos = averageTickNanos * 0.9 + tickNanos * 0.1;
+		budgetNanos = calculateBudget(targetTickNanos);
+		lastUsedNanos = 0;
+		if(jobs.isEmpty()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		long used;
+		// Always execute at least one step to guarantee progress, even when the server is lagging a lot
+		do {
+			Job job = getNextJob();
+			virtualClock = job.virtualTime;
+			long stepStart = System.nanoTime();
+			boolean more;
+			try {
+				more = job.task.step();
+			} catch(RuntimeException e) {
+				AreaShop.error("Error in background job " + job.name + ": " + ExceptionUtils.getStackTrace(e));
+				more = job.total < 0 || job.processed + 1 < job.total;
+			}
+			long cost = System.nanoTime() - stepStart;
+			job.processed++;
+			job.usedNanos += cost;
+			job.virtualTime += (double)cost / job.priority.getWeight();
+			if(!more) {
+				jobs.remove(job);
+				job.complete();
+			}
+			used = System.nanoTime() - start;
+		} while(used < budgetNanos && !jobs.isEmpty());
+		lastUsedNanos = used;
+	}
+
+	/**
+	 * Get the job that had the least time relative to its priority.
+	 * @return The job to execute a step for
+	 */
+	private Job getNextJob() {
+		Job result = jobs.get(0);
+		for(Job job : jobs) {
+			if(job.virtualTime < result.virtualTime) {
+				result = job;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Calculate the budget for the current tick based on the average tick duration.
+	 * @param targetTickNanos The duration of a tick when the server is not lagging
+	 * @return The budget in nanoseconds
+	 */
+	private long calculateBudget(long targetTickNanos) {
+		long maximum = (long)(plugin.getConfig().getDouble("workScheduler.maxMillisPerTick") * NANOS_PER_MILLI);
+		long minimum = Math.min(maximum, (long)(plugin.getConfig().getDouble("workScheduler.minMillisPerTick") * NANOS_PER_MILLI));
+		double load = averageTickNanos / targetTickNanos;
+		if(load <= 1.05) {
+			return maximum;
+		}
+		// Back off quickly when ticks take longer than they should
+		return Math.max(minimum, (long)(maximum / (load * load)));
+	}
+
+	/**
+	 * Get the duration of a tick when the server is not lagging.
+	 * @return The duration in nanoseconds
+	 */
+	private long getTargetTickNanos() {
+		return Math.max(1, (long)(plugin.getConfig().getDouble("workScheduler.targetTickMillis") * NANOS_PER_MILLI));
+	}
+
+	/**
+	 * Get the jobs that are queued.
+	 * @return The queued jobs (unmodifiable)
+	 */
+	public List<Job> getJobs() {
+		return Collections.unmodifiableList(jobs);
+	}
+
+	/**
+	 * Get the number of items that still have to be handled by the queued jobs.
+	 * @return The number of items, jobs of which the size is unknown count as 1
+	 */
+	public long getQueueDepth() {
+		long result = 0;
+		for(Job job : jobs) {
+			result += job.getRemaining() < 0 ? 1 : job.getRemaining();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the budget of the current tick.
+	 * @return The budget in nanoseconds
+	 */
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	/**
+	 * Get the time used for jobs in the last tick.
+	 * @return The used time in nanoseconds
+	 */
+	public long getLastUsedNanos() {
+		return lastUsedNanos;
+	}
+
+	/**
+	 * Get the average duration of a tick as measured by this manager.
+	 * @return The average tick duration in milliseconds
+	 */
+	public double getAverageTickMillis() {
+		return averageTickNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Work that is executed spread over ticks.
+	 */
+	public static class Job {
+		private final String name;
+		private final Priority priority;
+		private final Task task;
+		private final Runnable onDone;
+		private final long total;
+		private final long created;
+		private long processed;
+		private long usedNanos;
+		private double virtualTime;
+		private boolean done;
+
+		/**
+		 * Constructor.
+		 * @param name     The name of the job
+		 * @param priority The priority of the job
+		 * @param task     The task to execute
+		 * @param onDone   Runnable to execute when the task is complete, or null
+		 * @param total    The number of steps of the job, -1 if unknown
+		 */
+		private Job(String name, Priority priority, Task task, Runnable onDone, long total) {
+			this.name = name;
+			this.priority = priority;
+			this.task = task;
+			this.onDone = onDone;
+			this.total = total;
+			this.created = System.currentTimeMillis();
+		}
+
+		/**
+		 * Mark the job as done and run the completion runnable.
+		 */
+		private void complete() {
+			done = true;
+			AreaShop.debug("WorkManager: job " + name + " done, " + processed + " steps in " + (usedNanos / NANOS_PER_MILLI) + "ms over " + (System.currentTimeMillis() - created) + "ms");
+			if(onDone != null) {
+				onDone.run();
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Priority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Get the number of steps that still have to be executed.
+		 * @return The number of remaining steps, -1 if unknown
+		 */
+		public long getRemaining() {
+			return total < 0 ? -1 : total - processed;
+		}
+
+		/**
+		 * Get the number of steps that have been executed.
+		 * @return The number of executed steps
+		 */
+		public long getProcessed() {
+			return processed;
+		}
+
+		/**
+		 * Get the time spent executing this job.
+		 * @return The time in nanoseconds
+		 */
+		public long getUsedNanos() {
+			return usedNanos;
+		}
+
+		/**
+		 * Check if the job is complete.
+		 * @return true if the job is complete, otherwise false
+		 */
+		public boolean isDone() {
+			return done;
+		}
+	}
+}
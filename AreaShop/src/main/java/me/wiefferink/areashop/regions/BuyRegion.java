@@ -7,6 +7,7 @@ import me.wiefferink.areashop.events.ask.SellingRegionEvent;
 import me.wiefferink.areashop.events.notify.BoughtRegionEvent;
 import me.wiefferink.areashop.events.notify.ResoldRegionEvent;
 import me.wiefferink.areashop.events.notify.SoldRegionEvent;
+import me.wiefferink.areashop.storage.RegionIndex;
 import me.wiefferink.areashop.tools.Utils;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
@@ -17,9 +18,15 @@ import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
 
 public class BuyRegion extends GeneralRegion {
+	// Typed copies of the core settings, no initializers because the super constructor sets them
+	private UUID buyer;
+	private boolean resellMode;
+	private double resellPrice;
 
 	public BuyRegion(YamlConfiguration config) {
 		super(config);
@@ -29,11 +36,57 @@ public class BuyRegion extends GeneralRegion {
 		super(name, world);
 	}
 
+	public BuyRegion(RegionIndex.Entry indexEntry) {
+		super(indexEntry);
+	}
+
 	@Override
 	public RegionType getType() {
 		return RegionType.BUY;
 	}
 
+	@Override
+	protected void readSettings() {
+		super.readSettings();
+		YamlConfiguration config = getConfig();
+		buyer = toUUID(config.getString("buy.buyer"));
+		plugin.getNameCache().learn(buyer, config.getString("buy.buyerName"), false);
+		resellMode = config.getBoolean("buy.resellMode");
+		resellPrice = config.getDouble("buy.resellPrice");
+		plugin.getFileManager().updateInactivitySchedule(this);
+		plugin.getFileManager().updateOwnership(this);
+	}
+
+	@Override
+	protected void readIndexEntry(RegionIndex.Entry entry) {
+		super.readIndexEntry(entry);
+		buyer = entry.getOwner();
+		resellMode = RegionState.RESELL.getValue().equals(entry.getState());
+	}
+
+	@Override
+	protected boolean isTypedSetting(String path) {
+		return super.isTypedSetting(path)
+				|| matchesPath(path, "buy.buyer")
+				|| matchesPath(path, "buy.resellMode")
+				|| matchesPath(path, "buy.resellPrice");
+	}
+
+	@Override
+	protected Set<String> getAffectedTags(String path) {
+		if(isWithinPath(path, "buy.buyer")) {
+			return tagSet(AreaShop.tagPlayerName, AreaShop.tagPlayerUUID);
+		} else if(isWithinPath(path, "buy.buyerName")) {
+			return tagSet(AreaShop.tagPlayerName);
+		} else if(isWithinPath(path, "buy.resellMode")) {
+			// Only changes the state, which is checked separately
+			return Collections.emptySet();
+		} else if(isWithinPath(path, "buy.resellPrice")) {
+			return tagSet(AreaShop.tagResellPrice, AreaShop.tagRawResellPrice);
+		}
+		return super.getAffectedTags(path);
+	}
+
 	@Override
 	public RegionState getState() {
 		if(isSold() && isInResellingMode()) {
@@ -55,15 +108,7 @@ public class BuyRegion extends GeneralRegion {
 	 * @return The UUID of the owner of this region
 	 */
 	public UUID getBuyer() {
-		String buyer = config.getString("buy.buyer");
-		if(buyer != null) {
-			try {
-				return UUID.fromString(buyer);
-			} catch(IllegalArgumentException e) {
-				// Incorrect UUID
-			}
-		}
-		return null;
+		return buyer;
 	}
 
 	/**
@@ -76,7 +121,6 @@ public class BuyRegion extends GeneralRegion {
 	}
 
 	public boolean isBuyer(UUID player) {
-		UUID buyer = getBuyer();
 		return !(buyer == null || player == null) && buyer.equals(player);
 	}
 
@@ -99,7 +143,7 @@ public class BuyRegion extends GeneralRegion {
 	 * @return The name of the player that owns this region, if unavailable by UUID it will return the old cached name, if that is unavailable it will return &lt;UNKNOWN&gt;
 	 */
 	public String getPlayerName() {
-		String result = Utils.toName(getBuyer());
+		String result = plugin.getNameCache().getNameOrRequest(getBuyer());
 		if(result == null || result.isEmpty()) {
 			result = getStringSetting("buy.buyerName");
 			if(result == null || result.isEmpty()) {
@@ -122,7 +166,7 @@ public class BuyRegion extends GeneralRegion {
 	 * @return true if the region is available for reselling, otherwise false
 	 */
 	public boolean isInResellingMode() {
-		return config.getBoolean("buy.resellMode");
+		return resellMode;
 	}
 
 	/**
@@ -130,6 +174,10 @@ public class BuyRegion extends GeneralRegion {
 	 * @return The price of the region
 	 */
 	public double getPrice() {
+		RegionIndex.Entry entry = getUnloadedEntry();
+		if(entry != null) {
+			return entry.getPrice();
+		}
 		return Math.max(0, Utils.evaluateToDouble(getStringSetting("buy.price"), this));
 	}
 
@@ -138,7 +186,8 @@ public class BuyRegion extends GeneralRegion {
 	 * @return The resell price if isInResellingMode(), otherwise 0.0
 	 */
 	public double getResellPrice() {
-		return Math.max(0, config.getDouble("buy.resellPrice"));
+		requireSettings();
+		return Math.max(0, resellPrice);
 	}
 
 	/**
@@ -243,6 +292,11 @@ public class BuyRegion extends GeneralRegion {
 		return Utils.getDurationFromMinutesOrStringInput(getStringSetting("buy.inactiveTimeUntilSell"));
 	}
 
+	@Override
+	public long getInactiveTime() {
+		return getInactiveTimeUntilSell();
+	}
+
 	/**
 	 * Get a human readable string indicating how long the player can be offline until automatic unrent.
 	 * @return String indicating the inactive time until unrent
@@ -0,0 +1,120 @@
+package me.wiefferink.areashop.regions;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.tools.Utils;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Expiration warning profile with parsed durations, sorted by the time before expiration (longest first).
+ * Profiles are compiled once per configuration section and cached until the group or default settings change.
+ */
+public class ExpirationWarningProfile {
+
+	private static final Map<ConfigurationSection, ExpirationWarningProfile> cache = new WeakHashMap<>();
+	private static long cacheVersion = -1;
+
+	private final List<Warning> warnings;
+
+	/**
+	 * Constructor.
+	 * @param section The configuration section with the profile
+	 */
+	private ExpirationWarningProfile(ConfigurationSection section) {
+		warnings = new ArrayList<>();
+		for(String timeBefore : section.getKeys(false)) {
+			long timeBeforeParsed = Utils.durationStringToLong(timeBefore);
+			if(timeBeforeParsed <= 0) {
+				AreaShop.warn("Expiration warning profile has an incorrect time before expiration: '" + timeBefore + "'");
+				continue;
+			}
+			if(section.isConfigurationSection(timeBefore)) {
+				/* Legacy config layout:
+				 *   "1 minute":
+				 *     warnPlayer: true
+				 *     commands: ["say hi"]
+				 */
+				warnings.add(new Warning(timeBeforeParsed, section.getBoolean(timeBefore + ".warnPlayer"), section.getStringList(timeBefore + ".commands")));
+			} else {
+				warnings.add(new Warning(timeBeforeParsed, false, section.getStringList(timeBefore)));
+			}
+		}
+		warnings.sort((one, two) -> Long.compare(two.getTimeBefore(), one.getTimeBefore()));
+	}
+
+	/**
+	 * Get the compiled profile for a configuration section.
+	 * @param section The section with the profile
+	 * @return The compiled profile
+	 */
+	public static ExpirationWarningProfile get(ConfigurationSection section) {
+		long version = AreaShop.getInstance().getFileManager().getSettingsVersion();
+		if(version != cacheVersion) {
+			cache.clear();
+			cacheVersion = version;
+		}
+		return cache.computeIfAbsent(section, ExpirationWarningProfile::new);
+	}
+
+	/**
+	 * Get the warnings of this profile.
+	 * @return The warnings, sorted by time before expiration, longest first (unmodifiable)
+	 */
+	public List<Warning> getWarnings() {
+		return Collections.unmodifiableList(warnings);
+	}
+
+	/**
+	 * Get the time of the first warning after a certain time.
+	 * @param rentedUntil The time the rent expires
+	 * @param after       The time after which the warning should be
+	 * @return The time of the first warning after the given time, or Long.MAX_VALUE if there is none
+	 */
+	public long getNextWarningTime(long rentedUntil, long after) {
+		for(Warning warning : warnings) {
+			long time = rentedUntil - warning.getTimeBefore();
+			if(time > after) {
+				return time;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Warning at a certain time before a rent expires.
+	 */
+	public static class Warning {
+		private final long timeBefore;
+		private final boolean warnPlayer;
+		private final List<String> commands;
+
+		/**
+		 * Constructor.
+		 * @param timeBefore The time before expiration in milliseconds
+		 * @param warnPlayer true to send the renter the expiration warning message (legacy layout)
+		 * @param commands   The commands to run
+		 */
+		private Warning(long timeBefore, boolean warnPlayer, List<String> commands) {
+			this.timeBefore = timeBefore;
+			this.warnPlayer = warnPlayer;
+			this.commands = commands;
+		}
+
+		public long getTimeBefore() {
+			return timeBefore;
+		}
+
+		public boolean isWarnPlayer() {
+			return warnPlayer;
+		}
+
+		public List<String> getCommands() {
+			return commands;
+		}
+	}
+}
@@ -3,6 +3,7 @@ package me.wiefferink.areashop.regions;
 import com.sk89q.worldedit.BlockVector;
 import com.sk89q.worldedit.BlockVector2D;
 import com.sk89q.worldguard.protection.flags.DefaultFlag;
+import com.sk89q.worldguard.protection.managers.RegionManager;
 import com.sk89q.worldguard.protection.regions.ProtectedPolygonalRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import me.wiefferink.areashop.AreaShop;
@@ -14,6 +15,9 @@ import me.wiefferink.areashop.features.SignsFeature;
 import me.wiefferink.areashop.features.TeleportFeature;
 import me.wiefferink.areashop.interfaces.GeneralRegionInterface;
 import me.wiefferink.areashop.managers.FileManager;
+import me.wiefferink.areashop.storage.RegionIndex;
+import me.wiefferink.areashop.storage.RegionSnapshot;
+import me.wiefferink.areashop.tools.TagDependencies;
 import me.wiefferink.areashop.tools.Utils;
 import me.wiefferink.bukkitdo.Do;
 import me.wiefferink.interactivemessenger.processing.Message;
@@ -31,12 +35,14 @@ import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
 import java.io.File;
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,10 +51,45 @@ import java.util.UUID;
 public abstract class GeneralRegion implements GeneralRegionInterface, Comparable<GeneralRegion>, ReplacementProvider {
 	static final AreaShop plugin = AreaShop.getInstance();
 
-	YamlConfiguration config;
+	// Counter to determine which regions have been used least recently
+	private static long configAccessCounter = 0;
+	private static long settingsCacheHits = 0;
+	private static long settingsCacheMisses = 0;
+	// Time that a resolved WorldGuard region is used before checking if it has been removed or redefined
+	private static final long REGION_VALIDATION_INTERVAL = 1000;
+	// Changes when worlds are loaded or unloaded, invalidates the resolved worlds of all regions
+	private static long worldsVersion = 0;
+
+	// Null while the region is not loaded, indexEntry has the most important information then
+	private YamlConfiguration config;
+	private RegionIndex.Entry indexEntry;
+	private long configAccess;
+	private boolean loadFailed = false;
+	// Typed copies of the core settings, read from the configuration by readSettings()
+	private String name;
+	private String worldName;
+	private long lastActive;
+	private Set<UUID> friends = new HashSet<>();
+	private boolean settingsRead;
+	// Configuration that defines each setting, valid while settingSourcesVersion matches the FileManager
+	private Map<String, ConfigurationSection> settingSources = new HashMap<>();
+	private long settingSourcesVersion;
 	private boolean saveRequired = false;
 	private boolean deleted = false;
 	private long volume = -1;
+	// Resolved World and WorldGuard region with its dimensions, see resolveHandles()
+	private World cachedWorld;
+	private ProtectedRegion cachedRegion;
+	private int cachedWidth;
+	private int cachedDepth;
+	private int cachedHeight;
+	private String handlesWorldName;
+	private long handlesVersion = -1;
+	private long regionValidatedAt;
+	// Replacement tags that changed since the last update, all tags are considered changed when the settings version changed
+	private Set<String> changedTags = new HashSet<>();
+	private boolean allTagsChanged = true;
+	private long tagsVersion;
 
 	private Map<Class<? extends RegionFeature>, RegionFeature> features;
 
@@ -151,6 +192,17 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 */
 	public GeneralRegion(YamlConfiguration config) {
 		this.config = config;
+		readSettings();
+		setup();
+	}
+
+	/**
+	 * Constructor, used to restore regions from the index at startup, the configuration is loaded when it is needed.
+	 * @param indexEntry The summary of the region
+	 */
+	public GeneralRegion(RegionIndex.Entry indexEntry) {
+		this.indexEntry = indexEntry;
+		readIndexEntry(indexEntry);
 		setup();
 	}
 
@@ -262,15 +314,243 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The config file that stores the region information
 	 */
 	public YamlConfiguration getConfig() {
+		if(config == null) {
+			config = plugin.getFileManager().loadRegionConfig(getLowerCaseName());
+			if(config == null) {
+				// Keep the region usable, but never overwrite the stored data with this
+				AreaShop.error("Could not load region " + getName() + ", changes to it will not be saved");
+				loadFailed = true;
+				config = new YamlConfiguration();
+				config.set("general.name", indexEntry.getName());
+				config.set("general.world", indexEntry.getWorld());
+				config.set("general.type", indexEntry.getType());
+			} else {
+				readSettings();
+			}
+		}
+		configAccess = ++configAccessCounter;
 		return config;
 	}
 
+	/**
+	 * Read the core settings of the region from the configuration into their typed fields.
+	 * Subclasses that have their own typed fields should override this and call the super method.
+	 */
+	protected void readSettings() {
+		name = config.getString("general.name");
+		worldName = config.getString("general.world");
+		lastActive = config.getLong("general.lastActive");
+		plugin.getNameCache().learn(toUUID(config.getString("general.landlord")), config.getString("general.landlordName"), false);
+		friends = new HashSet<>();
+		for(String friend : config.getStringList("general.friends")) {
+			try {
+				friends.add(UUID.fromString(friend));
+			} catch(IllegalArgumentException e) {
+				// Don't add it
+			}
+		}
+		settingsRead = true;
+	}
+
+	/**
+	 * Initialize the typed fields that are part of the index, used when the configuration is not loaded.
+	 * Subclasses that have their own typed fields should override this and call the super method.
+	 * @param entry The index entry of this region
+	 */
+	protected void readIndexEntry(RegionIndex.Entry entry) {
+		name = entry.getName();
+		worldName = entry.getWorld();
+		lastActive = entry.getLastActive();
+		friends = new HashSet<>(entry.getFriends());
+	}
+
+	/**
+	 * Check if a setting is stored in a typed field, these have to be read again when it changes.
+	 * Subclasses that have their own typed fields should override this and call the super method.
+	 * @param path The path of the setting
+	 * @return true if the setting (or a part of it) is stored in a typed field, otherwise false
+	 */
+	protected boolean isTypedSetting(String path) {
+		return matchesPath(path, "general.name")
+				|| matchesPath(path, "general.world")
+				|| matchesPath(path, "general.lastActive")
+				|| matchesPath(path, "general.friends");
+	}
+
+	/**
+	 * Get the replacement tags of which the value changes when a setting changes.
+	 * Subclasses that provide their own tags should override this and call the super method.
+	 * @param path The path of the setting that changed
+	 * @return The tags that are affected by the setting, or null if the setting is unknown (all tags might be affected)
+	 */
+	protected Set<String> getAffectedTags(String path) {
+		if(isWithinPath(path, "general.lastActive") || isWithinPath(path, "general.signs")) {
+			return Collections.emptySet();
+		} else if(isWithinPath(path, "general.landlord") || isWithinPath(path, "general.landlordName")) {
+			return tagSet(AreaShop.tagLandlord, AreaShop.tagLandlordUUID);
+		} else if(isWithinPath(path, "general.friends")) {
+			return tagSet(AreaShop.tagFriends, AreaShop.tagFriendsUUID);
+		} else if(isWithinPath(path, "general.teleportLocation")) {
+			return tagSet(AreaShop.tagTeleportX, AreaShop.tagTeleportY, AreaShop.tagTeleportZ,
+					AreaShop.tagTeleportBlockX, AreaShop.tagTeleportBlockY, AreaShop.tagTeleportBlockZ,
+					AreaShop.tagTeleportPitch, AreaShop.tagTeleportYaw, AreaShop.tagTeleportPitchRound, AreaShop.tagTeleportYawRound,
+					AreaShop.tagTeleportWorld);
+		}
+		return null;
+	}
+
+	/**
+	 * Create a set of tags.
+	 * @param tags The tags to put in the set
+	 * @return Set with the given tags
+	 */
+	protected static Set<String> tagSet(String... tags) {
+		return new HashSet<>(Arrays.asList(tags));
+	}
+
+	/**
+	 * Check if a changed path is a setting or part of it.
+	 * @param path    The path that has been changed
+	 * @param setting The path of the setting
+	 * @return true if the path is the setting or one of its children, otherwise false
+	 */
+	public static boolean isWithinPath(String path, String setting) {
+		return setting.equals(path) || path.startsWith(setting + ".");
+	}
+
+	/**
+	 * Check if a changed path affects a setting.
+	 * @param path    The path that has been changed
+	 * @param setting The path of the setting
+	 * @return true if the path is the setting or one of its parents, otherwise false
+	 */
+	public static boolean matchesPath(String path, String setting) {
+		return setting.equals(path) || setting.startsWith(path + ".");
+	}
+
+	/**
+	 * Make sure the typed fields that are not part of the index have been read from the configuration.
+	 */
+	protected void requireSettings() {
+		if(!settingsRead && config == null) {
+			getConfig();
+		}
+	}
+
+	/**
+	 * Parse a UUID stored as setting.
+	 * @param value The stored value
+	 * @return The UUID, or null if the value is not set or not a valid UUID
+	 */
+	static UUID toUUID(String value) {
+		if(value != null) {
+			try {
+				return UUID.fromString(value);
+			} catch(IllegalArgumentException e) {
+				// Incorrect UUID
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check if the configuration of this region is loaded.
+	 * @return true if the configuration is in memory, otherwise false
+	 */
+	public boolean isConfigLoaded() {
+		return config != null;
+	}
+
+	/**
+	 * Get a number indicating when the configuration of this region was used last, higher is more recent.
+	 * @return The last access number
+	 */
+	public long getConfigAccess() {
+		return configAccess;
+	}
+
+	/**
+	 * Get the index entry of this region if its configuration is not loaded.
+	 * @return The index entry of this region, or null if the configuration is loaded
+	 */
+	public RegionIndex.Entry getUnloadedEntry() {
+		return config == null ? indexEntry : null;
+	}
+
+	/**
+	 * Remove the configuration of this region from memory, it will be loaded again when required.
+	 * Does nothing if the region has changes that are not written to the store yet.
+	 * @return true if the configuration has been unloaded, otherwise false
+	 */
+	public boolean unloadConfig() {
+		if(config == null
+				|| saveRequired
+				|| loadFailed
+				|| isDeleted()
+				|| plugin.getFileManager().getSaveQueue().isBusy(getLowerCaseName())) {
+			return false;
+		}
+		indexEntry = createIndexEntry();
+		config = null;
+		settingSources.clear();
+		return true;
+	}
+
+	/**
+	 * Create the index entry describing the current state of this region.
+	 * @return The index entry
+	 */
+	public RegionIndex.Entry createIndexEntry() {
+		if(config == null) {
+			return indexEntry;
+		}
+		long rentedUntil = 0;
+		double price;
+		long[] warningTimes = new long[0];
+		if(this instanceof RentRegion) {
+			rentedUntil = ((RentRegion)this).getRentedUntil();
+			price = ((RentRegion)this).getPrice();
+			warningTimes = ((RentRegion)this).getExpirationWarningTimes();
+		} else {
+			price = ((BuyRegion)this).getPrice();
+		}
+		List<RegionIndex.SignPosition> signs = new ArrayList<>();
+		for(SignsFeature.RegionSign sign : getSignsFeature().getSigns()) {
+			signs.add(new RegionIndex.SignPosition(sign.getKey(), sign.getWorldName(), sign.getX(), sign.getY(), sign.getZ()));
+		}
+		return new RegionIndex.Entry(getName(), getType().getValue().toLowerCase(), getWorldName(), getOwner(), getState().getValue(), rentedUntil, price, new HashSet<>(friends), lastActive, getInactiveTime(), warningTimes, signs, getSignsFeature().needsPeriodicUpdate());
+	}
+
 	/**
 	 * Broadcast an event to indicate that region settings have been changed.
 	 * This will update region flags, signs, etc.
 	 */
 	public void update() {
-		Bukkit.getServer().getPluginManager().callEvent(new UpdateRegionEvent(this));
+		// The WorldGuard region might have been redefined, the cached region is validated at most every REGION_VALIDATION_INTERVAL
+		plugin.getFileManager().updateRegionBounds(this);
+		// Only pass the tags that changed since the last update, displays that do not use them can be skipped
+		Set<String> changed = null;
+		long version = plugin.getFileManager().getSettingsVersion();
+		if(!allTagsChanged && tagsVersion == version) {
+			changed = new HashSet<>(changedTags);
+			changed.addAll(TagDependencies.getTimeDependentTags());
+		}
+		changedTags.clear();
+		allTagsChanged = false;
+		tagsVersion = version;
+		Bukkit.getServer().getPluginManager().callEvent(new UpdateRegionEvent(this, changed));
+	}
+
+	/**
+	 * Indicate that all region data might have changed, the next update() will update all signs and flags.
+	 * Used when the region changed in a way that is not tracked by setSetting(), like a reload.
+	 * Signs are written again even if they should show the correct text already, this repairs signs changed by others.
+	 * The World and WorldGuard region are resolved again as well, in case the region has been redefined.
+	 */
+	public void markAllChanged() {
+		allTagsChanged = true;
+		invalidateHandles();
+		getSignsFeature().clearRendered();
 	}
 
 	/**
@@ -303,6 +583,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 */
 	public void setDeleted() {
 		deleted = true;
+		invalidateHandles();
 	}
 
 	/**
@@ -310,7 +591,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The region name
 	 */
 	public String getName() {
-		return config.getString("general.name");
+		return name;
 	}
 
 	/**
@@ -338,7 +619,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 			return -1;
 		}
 		Player player = Bukkit.getPlayer(getOwner());
-		long savedTime = getLongSetting("general.lastActive");
+		long savedTime = lastActive;
 		// Check if he is online currently
 		if(player != null || savedTime == 0) {
 			return Calendar.getInstance().getTimeInMillis();
@@ -346,6 +627,29 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		return savedTime;
 	}
 
+	/**
+	 * Get the time at which the region will be unrented/sold because the owner has been inactive for too long.
+	 * @return The time in milliseconds since epoch, or Long.MAX_VALUE if there is no owner or unrenting/selling because of inactivity is disabled
+	 */
+	public long getInactivityDeadline() {
+		if(getOwner() == null) {
+			return Long.MAX_VALUE;
+		}
+		// The index has the inactive time of regions that are not loaded
+		RegionIndex.Entry entry = getUnloadedEntry();
+		long inactiveTime = entry == null ? getInactiveTime() : entry.getInactiveTime();
+		if(inactiveTime <= 0) {
+			return Long.MAX_VALUE;
+		}
+		return getLastActiveTime() + inactiveTime;
+	}
+
+	/**
+	 * Get the time the owner can be inactive before the region is unrented/sold.
+	 * @return The number of milliseconds, 0 or lower if unrenting/selling because of inactivity is disabled
+	 */
+	public abstract long getInactiveTime();
+
 	/**
 	 * Set the last active time of the player to the current time.
 	 */
@@ -364,7 +668,8 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The World where the region is located
 	 */
 	public World getWorld() {
-		return Bukkit.getWorld(getWorldName());
+		resolveHandles();
+		return cachedWorld;
 	}
 
 	/**
@@ -372,7 +677,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The name of the world of the region
 	 */
 	public String getWorldName() {
-		return getStringSetting("general.world");
+		return worldName;
 	}
 
 	/**
@@ -401,6 +706,14 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		return (this instanceof RentRegion && ((RentRegion)this).isRenter(player)) || (this instanceof BuyRegion && ((BuyRegion)this).isBuyer(player));
 	}
 
+	/**
+	 * Get the players that are added as friend to this region.
+	 * @return The UUIDs of the friends (unmodifiable)
+	 */
+	public Set<UUID> getFriends() {
+		return Collections.unmodifiableSet(friends);
+	}
+
 	/**
 	 * Get the player that is currently the owner of this region (either bought or rented it).
 	 * @return The UUID of the owner of this region
@@ -438,14 +751,8 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 				// Incorrect UUID
 			}
 		}
-		String landlordName = getStringSetting("general.landlordName");
-		if(landlordName != null && !landlordName.isEmpty()) {
-			OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(landlordName);
-			if(offlinePlayer != null) {
-				return offlinePlayer.getUniqueId();
-			}
-		}
-		return null;
+		// Resolving a name can require a web request, only use the name cache (which resolves it in the background)
+		return plugin.getNameCache().getUniqueIdOrRequest(getStringSetting("general.landlordName"));
 	}
 
 	/**
@@ -453,9 +760,9 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The name of the landlord, if unavailable by UUID it will return the old cached name, if that is unavailable it will return &lt;UNKNOWN&gt;
 	 */
 	public String getLandlordName() {
-		String result = Utils.toName(getLandlord());
+		String result = plugin.getNameCache().getNameOrRequest(getLandlord());
 		if(result == null || result.isEmpty()) {
-			result = config.getString("general.landlordName");
+			result = getConfig().getString("general.landlordName");
 			if(result == null || result.isEmpty()) {
 				result = null;
 			}
@@ -501,13 +808,8 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The ProtectedRegion of WorldGuard or null if the region does not exist anymore
 	 */
 	public ProtectedRegion getRegion() {
-		if(getWorld() == null
-				|| plugin.getWorldGuard() == null
-				|| plugin.getWorldGuard().getRegionManager(getWorld()) == null
-				|| plugin.getWorldGuard().getRegionManager(getWorld()).getRegion(getName()) == null) {
-			return null;
-		}
-		return plugin.getWorldGuard().getRegionManager(getWorld()).getRegion(getName());
+		resolveHandles();
+		return cachedRegion;
 	}
 
 	/**
@@ -515,10 +817,8 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The width of the region (x-axis)
 	 */
 	public int getWidth() {
-		if(getRegion() == null) {
-			return 0;
-		}
-		return getRegion().getMaximumPoint().getBlockX() - getRegion().getMinimumPoint().getBlockX() + 1;
+		resolveHandles();
+		return cachedRegion == null ? 0 : cachedWidth;
 	}
 
 	/**
@@ -526,10 +826,8 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The depth of the region (z-axis)
 	 */
 	public int getDepth() {
-		if(getRegion() == null) {
-			return 0;
-		}
-		return getRegion().getMaximumPoint().getBlockZ() - getRegion().getMinimumPoint().getBlockZ() + 1;
+		resolveHandles();
+		return cachedRegion == null ? 0 : cachedDepth;
 	}
 
 	/**
@@ -537,10 +835,60 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The height of the region (y-axis)
 	 */
 	public int getHeight() {
-		if(getRegion() == null) {
-			return 0;
+		resolveHandles();
+		return cachedRegion == null ? 0 : cachedHeight;
+	}
+
+	/**
+	 * Resolve the World and WorldGuard region of this region if they are not cached or might have changed.
+	 * The world is resolved again after worlds have been loaded or unloaded, or when the world setting changed.
+	 * The WorldGuard region is checked again after REGION_VALIDATION_INTERVAL, to notice regions that are removed or redefined.
+	 */
+	private void resolveHandles() {
+		if(handlesVersion != worldsVersion || (worldName == null ? handlesWorldName != null : !worldName.equals(handlesWorldName))) {
+			cachedWorld = worldName == null ? null : Bukkit.getWorld(worldName);
+			handlesWorldName = worldName;
+			handlesVersion = worldsVersion;
+			regionValidatedAt = 0;
+		}
+		long now = System.currentTimeMillis();
+		if(now - regionValidatedAt < REGION_VALIDATION_INTERVAL) {
+			return;
+		}
+		regionValidatedAt = now;
+		ProtectedRegion region = null;
+		if(cachedWorld != null && plugin.getWorldGuard() != null) {
+			RegionManager manager = plugin.getWorldGuard().getRegionManager(cachedWorld);
+			if(manager != null) {
+				region = manager.getRegion(getName());
+			}
+		}
+		if(region != cachedRegion) {
+			// Redefined regions are new objects, the volume has to be calculated again
+			volume = -1;
+		}
+		cachedRegion = region;
+		if(region != null) {
+			BlockVector min = region.getMinimumPoint();
+			BlockVector max = region.getMaximumPoint();
+			cachedWidth = max.getBlockX() - min.getBlockX() + 1;
+			cachedDepth = max.getBlockZ() - min.getBlockZ() + 1;
+			cachedHeight = max.getBlockY() - min.getBlockY() + 1;
 		}
-		return getRegion().getMaximumPoint().getBlockY() - getRegion().getMinimumPoint().getBlockY() + 1;
+	}
+
+	/**
+	 * Resolve the World and WorldGuard region again at the next use, call when they might have changed.
+	 */
+	public void invalidateHandles() {
+		handlesVersion = -1;
+	}
+
+	/**
+	 * Indicate that worlds have been loaded or unloaded, the worlds of all regions are resolved again at their next use.
+	 */
+	public static void worldsChanged() {
+		worldsVersion++;
 	}
 
 	/**
@@ -548,13 +896,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return A Set with all groups of this region
 	 */
 	public Set<RegionGroup> getGroups() {
-		Set<RegionGroup> result = new HashSet<>();
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this)) {
-				result.add(group);
-			}
-		}
-		return result;
+		return new HashSet<>(plugin.getFileManager().getGroupsOf(this));
 	}
 
 	/**
@@ -563,7 +905,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 */
 	public List<String> getGroupNames() {
 		List<String> result = new ArrayList<>();
-		for(RegionGroup group : getGroups()) {
+		for(RegionGroup group : plugin.getFileManager().getGroupsOf(this)) {
 			result.add(group.getName());
 		}
 		return result;
@@ -787,6 +1129,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 			region.setFlag(DefaultFlag.GREET_MESSAGE, null);
 			region.setFlag(DefaultFlag.FAREWELL_MESSAGE, null);
 		}
+		markAllChanged();
 	}
 
 	/**
@@ -805,67 +1148,102 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	}
 
 	/**
-	 * Save this region to disk now, using this method could slow down the plugin, normally saveRequired() should be used.
-	 * @return true if the region is saved successfully, otherwise false
+	 * Save this region now, normally saveRequired() should be used.
+	 * The region is serialized directly, writing it to disk is done by the save thread.
+	 * @return true if the region has been queued for saving, otherwise false
 	 */
 	public boolean saveNow() {
-		if(isDeleted()) {
+		if(isDeleted() || loadFailed) {
 			return false;
 		}
 		saveRequired = false;
-		File file = new File(plugin.getFileManager().getRegionFolder() + File.separator + getName().toLowerCase() + ".yml");
-		try {
-			config.save(file);
-			return true;
-		} catch(IOException e) {
-			return false;
-		}
+		plugin.getFileManager().getSaveQueue().save(createSnapshot());
+		return true;
+	}
+
+	/**
+	 * Serialize the current state of this region.
+	 * @return Snapshot of this region that can be saved on another thread
+	 */
+	public RegionSnapshot createSnapshot() {
+		return new RegionSnapshot(getLowerCaseName(), getType().getValue().toLowerCase(), getWorldName(), getConfig().saveToString());
 	}
 
 
 	// CONFIG
 
 	/**
-	 * Get a boolean setting for this region, defined as follows
+	 * Get the configuration that defines a setting for this region, determined as follows
 	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
 	 * - If the region has groups, use the setting defined by the most important group, if any
 	 * - Otherwise fallback to the default.yml file setting
+	 * The result is cached until the setting of the region, its groups or default.yml change.
 	 * @param path The path to get the setting of
-	 * @return The value of the setting (strings are handled as booleans)
-	 */
-	public boolean getBooleanSetting(String path) {
-		if(config.isSet(path)) {
-			if(config.isString(path)) {
-				return config.getString(path).equalsIgnoreCase("true");
+	 * @return The configuration that should be used to read the setting
+	 */
+	public ConfigurationSection getSettingSource(String path) {
+		YamlConfiguration regionConfig = getConfig();
+		long version = plugin.getFileManager().getSettingsVersion();
+		if(settingSourcesVersion != version) {
+			settingSources.clear();
+			settingSourcesVersion = version;
+		}
+		ConfigurationSection result = settingSources.get(path);
+		if(result != null) {
+			settingsCacheHits++;
+			return result;
+		}
+		settingsCacheMisses++;
+
+		if(regionConfig.isSet(path)) {
+			result = regionConfig;
+		} else {
+			// Groups are ordered by priority, the first one that has the setting wins
+			for(RegionGroup group : plugin.getFileManager().getGroupsOf(this)) {
+				ConfigurationSection groupSettings = group.getSettings();
+				if(groupSettings.isSet(path)) {
+					result = groupSettings;
+					break;
+				}
 			}
-			return config.getBoolean(path);
-		}
-		boolean result = false;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				if(group.getSettings().isString(path)) {
-					result = group.getSettings().getString(path).equalsIgnoreCase("true");
+			if(result == null) {
+				if(this.getFileManager().getRegionSettings().isSet(path)) {
+					result = this.getFileManager().getRegionSettings();
 				} else {
-					result = group.getSettings().getBoolean(path);
+					result = this.getFileManager().getFallbackRegionSettings();
 				}
-				priority = group.getPriority();
-				found = true;
 			}
 		}
-		if(found) {
-			return result;
-		}
+		settingSources.put(path, result);
+		return result;
+	}
 
-		if(this.getFileManager().getRegionSettings().isString(path)) {
-			return this.getFileManager().getRegionSettings().getString(path).equalsIgnoreCase("true");
-		}
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getBoolean(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getBoolean(path);
+	/**
+	 * Forget the cached sources of the settings of this region that are affected by a change.
+	 * @param path The path that changed, null to clear all
+	 */
+	public void clearSettingSources(String path) {
+		if(path == null) {
+			settingSources.clear();
+			return;
 		}
+		settingSources.keySet().removeIf(key -> matchesPath(path, key) || matchesPath(key, path));
+	}
+
+	/**
+	 * Get the number of setting lookups that have been answered from the cache.
+	 * @return The number of cache hits since startup
+	 */
+	public static long getSettingsCacheHits() {
+		return settingsCacheHits;
+	}
+
+	/**
+	 * Get the number of setting lookups that had to check the region, groups and default.yml.
+	 * @return The number of cache misses since startup
+	 */
+	public static long getSettingsCacheMisses() {
+		return settingsCacheMisses;
 	}
 
 	/**
@@ -876,29 +1254,24 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @param path The path to get the setting of
 	 * @return The value of the setting (strings are handled as booleans)
 	 */
-	public int getIntegerSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getInt(path);
-		}
-		int result = 0;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getInt(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
+	public boolean getBooleanSetting(String path) {
+		ConfigurationSection source = getSettingSource(path);
+		if(source.isString(path)) {
+			return source.getString(path).equalsIgnoreCase("true");
 		}
+		return source.getBoolean(path);
+	}
 
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getInt(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getInt(path);
-		}
+	/**
+	 * Get a boolean setting for this region, defined as follows
+	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
+	 * - If the region has groups, use the setting defined by the most important group, if any
+	 * - Otherwise fallback to the default.yml file setting
+	 * @param path The path to get the setting of
+	 * @return The value of the setting (strings are handled as booleans)
+	 */
+	public int getIntegerSetting(String path) {
+		return getSettingSource(path).getInt(path);
 	}
 
 	/**
@@ -910,28 +1283,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The value of the setting
 	 */
 	public double getDoubleSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getDouble(path);
-		}
-		double result = 0;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getDouble(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getDouble(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getDouble(path);
-		}
+		return getSettingSource(path).getDouble(path);
 	}
 
 	/**
@@ -943,28 +1295,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The value of the setting
 	 */
 	public long getLongSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getLong(path);
-		}
-		long result = 0;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getLong(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getLong(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getLong(path);
-		}
+		return getSettingSource(path).getLong(path);
 	}
 
 	/**
@@ -976,28 +1307,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The value of the setting
 	 */
 	public String getStringSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getString(path);
-		}
-		String result = null;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getString(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getString(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getString(path);
-		}
+		return getSettingSource(path).getString(path);
 	}
 
 	/**
@@ -1009,28 +1319,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The value of the setting
 	 */
 	public List<String> getStringListSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getStringList(path);
-		}
-		List<String> result = null;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getStringList(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getStringList(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getStringList(path);
-		}
+		return getSettingSource(path).getStringList(path);
 	}
 
 	/**
@@ -1042,28 +1331,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The value of the setting
 	 */
 	public ConfigurationSection getConfigurationSectionSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getConfigurationSection(path);
-		}
-		ConfigurationSection result = null;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getConfigurationSection(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getConfigurationSection(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getConfigurationSection(path);
-		}
+		return getSettingSource(path).getConfigurationSection(path);
 	}
 
 	/**
@@ -1091,28 +1359,11 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return The value of the setting
 	 */
 	public ConfigurationSection getConfigurationSectionSetting(String path, String translateProfileName, Object earlyResult) {
-		Object result = null;
+		Object result;
 		if(earlyResult != null) {
 			result = earlyResult;
-		} else if(config.isSet(path)) {
-			result = config.get(path);
 		} else {
-			boolean found = false;
-			int priority = Integer.MIN_VALUE;
-			for(RegionGroup group : plugin.getFileManager().getGroups()) {
-				if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-					result = group.getSettings().get(path);
-					priority = group.getPriority();
-					found = true;
-				}
-			}
-			if(!found) {
-				if(this.getFileManager().getRegionSettings().isSet(path)) {
-					result = this.getFileManager().getRegionSettings().get(path);
-				} else {
-					result = this.getFileManager().getFallbackRegionSettings().get(path);
-				}
-			}
+			result = getSettingSource(path).get(path);
 		}
 
 		// Either result is a ConfigurationSection or is used as key in the plugin config to get a ConfigurationSection
@@ -1131,7 +1382,28 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @param value The value to set it to, null to remove the setting
 	 */
 	public void setSetting(String path, Object value) {
-		config.set(path, value);
+		getConfig().set(path, value);
+		clearSettingSources(path);
+		if(!allTagsChanged) {
+			Set<String> affectedTags = getAffectedTags(path);
+			if(affectedTags == null) {
+				allTagsChanged = true;
+				changedTags.clear();
+			} else {
+				changedTags.addAll(affectedTags);
+			}
+		}
+		if(isTypedSetting(path)) {
+			String oldWorld = worldName;
+			readSettings();
+			if(oldWorld != null && !oldWorld.equals(worldName)) {
+				plugin.getFileManager().regionWorldChanged(this, oldWorld);
+			}
+		}
+		if(matchesPath(path, "rent.inactiveTimeUntilUnrent") || matchesPath(path, "buy.inactiveTimeUntilSell")) {
+			plugin.getFileManager().updateInactivitySchedule(this);
+		}
+		plugin.getFileManager().getJournal().recordSet(getLowerCaseName(), path, value);
 		this.saveRequired();
 	}
 
@@ -1159,91 +1431,61 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		if(plugin.hasPermission(offlinePlayer, "areashop.limitbypass")) {
 			return new LimitResult(true, null, 0, 0, null);
 		}
-		GeneralRegion exclude = null;
-		if(extend) {
-			exclude = this;
-		}
-		String typePath;
-		if(type == RegionType.RENT) {
-			typePath = "rents";
-		} else {
-			typePath = "buys";
+		// When extending this region is already counted, but it should not limit itself
+		boolean excludeThis = extend && isOwner(offlinePlayer);
+		// Check all limitgroups the player has that apply to this region
+		List<LimitGroup> groups = new ArrayList<>();
+		for(LimitGroup limitGroup : LimitGroup.getAll()) {
+			if(limitGroup.matches(this) && plugin.hasPermission(offlinePlayer, limitGroup.getPermission())) {
+				groups.add(limitGroup);
+			}
 		}
-		// Check all limitgroups the player has
-		List<String> groups = new ArrayList<>(plugin.getConfig().getConfigurationSection("limitGroups").getKeys(false));
 		while(!groups.isEmpty()) {
-			String group = groups.get(0);
-			if(plugin.hasPermission(offlinePlayer, "areashop.limits." + group) && this.matchesLimitGroup(group)) {
-				String pathPrefix = "limitGroups." + group + ".";
-				if(!plugin.getConfig().isInt(pathPrefix + "total")) {
-					AreaShop.warn("Limit group " + group + " in the config.yml file does not correctly specify the number of total regions (should be specified as total: <number>)");
-				}
-				if(!plugin.getConfig().isInt(pathPrefix + typePath)) {
-					AreaShop.warn("Limit group " + group + " in the config.yml file does not correctly specify the number of " + typePath + " regions (should be specified as " + typePath + ": <number>)");
-				}
-				int totalLimit = plugin.getConfig().getInt("limitGroups." + group + ".total");
-				int typeLimit = plugin.getConfig().getInt("limitGroups." + group + "." + typePath);
-				//AreaShop.debug("typeLimitOther="+typeLimit+", typePath="+typePath);
-				int totalCurrent = hasRegionsInLimitGroup(offlinePlayer, group, plugin.getFileManager().getRegions(), exclude);
-				int typeCurrent;
-				if(type == RegionType.RENT) {
-					typeCurrent = hasRegionsInLimitGroup(offlinePlayer, group, plugin.getFileManager().getRents(), exclude);
-				} else {
-					typeCurrent = hasRegionsInLimitGroup(offlinePlayer, group, plugin.getFileManager().getBuys(), exclude);
-				}
-				if(totalLimit == -1) {
-					totalLimit = Integer.MAX_VALUE;
-				}
-				if(typeLimit == -1) {
-					typeLimit = Integer.MAX_VALUE;
-				}
-				String totalHighestGroup = group;
-				String typeHighestGroup = group;
-				groups.remove(group);
-				// Get the highest number from the groups of the same category
-				List<String> groupsCopy = new ArrayList<>(groups);
-				for(String checkGroup : groupsCopy) {
-					if(plugin.hasPermission(offlinePlayer, "areashop.limits." + checkGroup) && this.matchesLimitGroup(checkGroup)) {
-						if(limitGroupsOfSameCategory(group, checkGroup)) {
-							groups.remove(checkGroup);
-							int totalLimitOther = plugin.getConfig().getInt("limitGroups." + checkGroup + ".total");
-							int typeLimitOther = plugin.getConfig().getInt("limitGroups." + checkGroup + "." + typePath);
-							if(totalLimitOther > totalLimit) {
-								totalLimit = totalLimitOther;
-								totalHighestGroup = checkGroup;
-							} else if(totalLimitOther == -1) {
-								totalLimit = Integer.MAX_VALUE;
-							}
-							if(typeLimitOther > typeLimit) {
-								typeLimit = typeLimitOther;
-								typeHighestGroup = checkGroup;
-							} else if(typeLimitOther == -1) {
-								typeLimit = Integer.MAX_VALUE;
-							}
-						}
-					} else {
-						groups.remove(checkGroup);
+			LimitGroup group = groups.remove(0);
+			int totalLimit = group.getTotal();
+			int typeLimit = group.getLimit(type);
+			String totalHighestGroup = group.getName();
+			String typeHighestGroup = group.getName();
+			// Get the highest number from the groups of the same category
+			Iterator<LimitGroup> others = groups.iterator();
+			while(others.hasNext()) {
+				LimitGroup other = others.next();
+				if(group.isSameCategory(other)) {
+					others.remove();
+					if(other.getTotal() > totalLimit) {
+						totalLimit = other.getTotal();
+						totalHighestGroup = other.getName();
+					}
+					if(other.getLimit(type) > typeLimit) {
+						typeLimit = other.getLimit(type);
+						typeHighestGroup = other.getName();
 					}
 				}
-				// Check if the limits stop the player from buying the region
-				if(typeCurrent >= typeLimit) {
-					LimitType limitType;
-					if(type == RegionType.RENT) {
-						if(extend) {
-							limitType = LimitType.EXTEND;
-						} else {
-							limitType = LimitType.RENTS;
-						}
+			}
+			// Groups of the same category match the same regions, so the counts of the first one apply to all
+			int totalCurrent = plugin.getFileManager().getLimitCount(offlinePlayer.getUniqueId(), group, null);
+			int typeCurrent = plugin.getFileManager().getLimitCount(offlinePlayer.getUniqueId(), group, type);
+			if(excludeThis) {
+				totalCurrent--;
+				typeCurrent--;
+			}
+			// Check if the limits stop the player from buying the region
+			if(typeCurrent >= typeLimit) {
+				LimitType limitType;
+				if(type == RegionType.RENT) {
+					if(extend) {
+						limitType = LimitType.EXTEND;
 					} else {
-						limitType = LimitType.BUYS;
+						limitType = LimitType.RENTS;
 					}
-					return new LimitResult(false, limitType, typeLimit, typeCurrent, typeHighestGroup);
-				}
-				if(totalCurrent >= totalLimit) {
-					return new LimitResult(false, LimitType.TOTAL, totalLimit, totalCurrent, totalHighestGroup);
+				} else {
+					limitType = LimitType.BUYS;
 				}
+				return new LimitResult(false, limitType, typeLimit, typeCurrent, typeHighestGroup);
+			}
+			if(totalCurrent >= totalLimit) {
+				return new LimitResult(false, LimitType.TOTAL, totalLimit, totalCurrent, totalHighestGroup);
 			}
-			groups.remove(group);
 		}
 		return new LimitResult(true, null, 0, 0, null);
 	}
@@ -1320,23 +1562,6 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		}
 	}
 
-	/**
-	 * Checks if two limitGroups are of the same category (same groups and worlds lists).
-	 * @param firstGroup  The first group
-	 * @param secondGroup The second group
-	 * @return true if the groups and worlds lists are the same, otherwise false
-	 */
-	private boolean limitGroupsOfSameCategory(String firstGroup, String secondGroup) {
-		List<String> firstGroups = plugin.getConfig().getStringList("limitGroups." + firstGroup + ".groups");
-		List<String> secondGroups = plugin.getConfig().getStringList("limitGroups." + secondGroup + ".groups");
-		if(!firstGroups.containsAll(secondGroups) || !secondGroups.containsAll(firstGroups)) {
-			return false;
-		}
-		List<String> firstWorlds = plugin.getConfig().getStringList("limitGroups." + firstGroup + ".worlds");
-		List<String> secondWorlds = plugin.getConfig().getStringList("limitGroups." + secondGroup + ".worlds");
-		return !(!firstWorlds.containsAll(secondWorlds) || !secondWorlds.containsAll(firstWorlds));
-	}
-
 	/**
 	 * Get the amount of regions a player has matching a certain limits group (config.yml -- limitGroups)
 	 * @param player     The player to check the amount for
@@ -1361,17 +1586,9 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return true if the region applies to the limit group, otherwise false
 	 */
 	public boolean matchesLimitGroup(String group) {
-		List<String> worlds = plugin.getConfig().getStringList("limitGroups." + group + ".worlds");
-		List<String> groups = plugin.getConfig().getStringList("limitGroups." + group + ".groups");
-		if((worlds == null || worlds.isEmpty() || worlds.contains(getWorldName()))) {
-			if(groups == null || groups.isEmpty()) {
-				return true;
-			} else {
-				boolean inGroups = false;
-				for(RegionGroup checkGroup : plugin.getFileManager().getGroups()) {
-					inGroups = inGroups || (groups.contains(checkGroup.getName()) && checkGroup.isMember(this));
-				}
-				return inGroups;
+		for(LimitGroup limitGroup : LimitGroup.getAll()) {
+			if(limitGroup.getName().equals(group)) {
+				return limitGroup.matches(this);
 			}
 		}
 		return false;
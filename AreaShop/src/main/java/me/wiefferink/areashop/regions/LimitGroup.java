@@ -0,0 +1,174 @@
+package me.wiefferink.areashop.regions;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.regions.GeneralRegion.RegionType;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Limit group of the config.yml file (limitGroups section) with its filters and limits parsed.
+ * Limit groups are compiled once for each loaded config.yml file, problems are reported at that moment instead of at each check.
+ */
+public class LimitGroup {
+
+	private static List<LimitGroup> compiled = Collections.emptyList();
+	private static YamlConfiguration compiledFrom = null;
+	private static long compiledVersion = 0;
+
+	private final String name;
+	private final String permission;
+	private final Set<String> worlds;
+	private final Set<String> groups;
+	private final int total;
+	private final int rents;
+	private final int buys;
+
+	/**
+	 * Constructor.
+	 * @param name    The name of the limit group
+	 * @param section The section of the limit group
+	 */
+	private LimitGroup(String name, ConfigurationSection section) {
+		this.name = name;
+		this.permission = "areashop.limits." + name;
+		this.worlds = Collections.unmodifiableSet(new HashSet<>(section.getStringList("worlds")));
+		this.groups = Collections.unmodifiableSet(new HashSet<>(section.getStringList("groups")));
+		this.total = parseLimit(section, "total");
+		this.rents = parseLimit(section, "rents");
+		this.buys = parseLimit(section, "buys");
+	}
+
+	/**
+	 * Parse a limit, -1 means unlimited.
+	 * @param section The section of the limit group
+	 * @param key     The key of the limit
+	 * @return The limit, Integer.MAX_VALUE for unlimited
+	 */
+	private int parseLimit(ConfigurationSection section, String key) {
+		if(!section.isInt(key)) {
+			AreaShop.warn("Limit group " + name + " in the config.yml file does not correctly specify the number of " + key + " regions (should be specified as " + key + ": <number>)");
+		}
+		int result = section.getInt(key);
+		if(result == -1) {
+			result = Integer.MAX_VALUE;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the compiled limit groups of the current config.yml file.
+	 * @return The limit groups in the order of the config.yml file (unmodifiable)
+	 */
+	public static List<LimitGroup> getAll() {
+		YamlConfiguration config = AreaShop.getInstance().getConfig();
+		if(config != compiledFrom) {
+			List<LimitGroup> result = new ArrayList<>();
+			ConfigurationSection section = config == null ? null : config.getConfigurationSection("limitGroups");
+			if(section != null) {
+				for(String group : section.getKeys(false)) {
+					if(section.isConfigurationSection(group)) {
+						result.add(new LimitGroup(group, section.getConfigurationSection(group)));
+					} else {
+						AreaShop.warn("Limit group " + group + " in the config.yml file is not a section with limits");
+					}
+				}
+			}
+			compiled = Collections.unmodifiableList(result);
+			compiledFrom = config;
+			compiledVersion++;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Get the version of the compiled limit groups, changes each time the limit groups are compiled again.
+	 * @return The current version
+	 */
+	public static long getVersion() {
+		getAll();
+		return compiledVersion;
+	}
+
+	/**
+	 * Get the name of the limit group.
+	 * @return The name as used in the config.yml file
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the permission that gives players this limit group.
+	 * @return The permission node
+	 */
+	public String getPermission() {
+		return permission;
+	}
+
+	/**
+	 * Get the limit for the total number of regions.
+	 * @return The maximum number of regions, Integer.MAX_VALUE for unlimited
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Get the limit for a type of region.
+	 * @param type The type of region
+	 * @return The maximum number of regions of the type, Integer.MAX_VALUE for unlimited
+	 */
+	public int getLimit(RegionType type) {
+		return type == RegionType.RENT ? rents : buys;
+	}
+
+	/**
+	 * Check if a region matches the filters of this limit group.
+	 * @param world        The name of the world of the region
+	 * @param regionGroups The groups the region is member of
+	 * @return true if the region applies to the limit group, otherwise false
+	 */
+	public boolean matches(String world, List<RegionGroup> regionGroups) {
+		if(!worlds.isEmpty() && !worlds.contains(world)) {
+			return false;
+		}
+		if(groups.isEmpty()) {
+			return true;
+		}
+		for(RegionGroup group : regionGroups) {
+			if(groups.contains(group.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check if a region matches the filters of this limit group.
+	 * @param region The region to check
+	 * @return true if the region applies to the limit group, otherwise false
+	 */
+	public boolean matches(GeneralRegion region) {
+		return matches(region.getWorldName(), AreaShop.getInstance().getFileManager().getGroupsOf(region));
+	}
+
+	/**
+	 * Check if another limit group is of the same category (same groups and worlds filters).
+	 * @param other The limit group to compare to
+	 * @return true if the groups and worlds filters are the same, otherwise false
+	 */
+	public boolean isSameCategory(LimitGroup other) {
+		return worlds.equals(other.worlds) && groups.equals(other.groups);
+	}
+
+	@Override
+	public String toString() {
+		return "LimitGroup(name=" + name + ", worlds=" + worlds + ", groups=" + groups + ", total=" + total + ", rents=" + rents + ", buys=" + buys + ")";
+	}
+}
@@ -6,6 +6,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 // TODO consider switching to saving lowercase regions
@@ -14,8 +15,8 @@ public class RegionGroup {
 	private AreaShop plugin;
 	private String name;
 	private Set<String> regions;
+	// Names of the regions in the worlds of this group, kept up to date by the FileManager
 	private Set<String> autoRegions;
-	private boolean autoDirty;
 	private Set<String> worlds;
 
 	/**
@@ -26,12 +27,25 @@ public class RegionGroup {
 	public RegionGroup(AreaShop plugin, String name) {
 		this.plugin = plugin;
 		this.name = name;
-		this.autoDirty = true;
 		setSetting("name", name);
 
 		// Load regions and worlds
 		regions = new HashSet<>(getSettings().getStringList("regions"));
-		worlds = new HashSet<>(getSettings().getStringList("worlds"));
+		worlds = new HashSet<>(getSettings().getStringList("regionsFromWorlds"));
+		// Worlds used to be read from 'worlds' while addWorld() stores them in 'regionsFromWorlds', move them over
+		List<String> legacyWorlds = getSettings().getStringList("worlds");
+		if(!legacyWorlds.isEmpty()) {
+			worlds.addAll(legacyWorlds);
+			setSetting("worlds", null);
+			setSetting("regionsFromWorlds", new ArrayList<>(worlds));
+			saveRequired();
+		}
+		autoRegions = new HashSet<>();
+		for(String world : worlds) {
+			for(GeneralRegion region : plugin.getFileManager().getRegionsInWorld(world)) {
+				autoRegions.add(region.getName());
+			}
+		}
 	}
 
 	/**
@@ -39,23 +53,27 @@ public class RegionGroup {
 	 * @return Set of regions automatically added by the configuration
 	 */
 	public Set<String> getAutoRegions() {
-		if(autoDirty) {
-			autoRegions = new HashSet<>();
-			for(GeneralRegion region : plugin.getFileManager().getRegions()) {
-				if(worlds.contains(region.getWorldName())) {
-					autoRegions.add(region.getName());
-				}
-			}
-			autoDirty = false;
-		}
 		return autoRegions;
 	}
 
 	/**
-	 * Mark that automatically added regions should be regenerated.
+	 * Update the automatically added regions for a region that has been added, removed or moved to another world.
+	 * @param region     The region that changed
+	 * @param registered true if the region is registered in AreaShop, false if it has been removed
 	 */
-	public void autoDirty() {
-		autoDirty = true;
+	public void updateAutoRegion(GeneralRegion region, boolean registered) {
+		if(registered && worlds.contains(region.getWorldName())) {
+			autoRegions.add(region.getName());
+		} else {
+			autoRegions.remove(region.getName());
+		}
+	}
+
+	/**
+	 * Forget all automatically added regions, used when all regions are loaded again.
+	 */
+	public void clearAutoRegions() {
+		autoRegions.clear();
 	}
 
 	/**
@@ -67,7 +85,10 @@ public class RegionGroup {
 		if(worlds.add(world)) {
 			setSetting("regionsFromWorlds", new ArrayList<>(worlds));
 			saveRequired();
-			autoDirty();
+			for(GeneralRegion region : plugin.getFileManager().getRegionsInWorld(world)) {
+				autoRegions.add(region.getName());
+			}
+			plugin.getFileManager().updateMemberships(this, world);
 			return true;
 		}
 		return false;
@@ -82,7 +103,10 @@ public class RegionGroup {
 		if(worlds.remove(world)) {
 			setSetting("regionsFromWorlds", new ArrayList<>(worlds));
 			saveRequired();
-			autoDirty();
+			for(GeneralRegion region : plugin.getFileManager().getRegionsInWorld(world)) {
+				autoRegions.remove(region.getName());
+			}
+			plugin.getFileManager().updateMemberships(this, world);
 			return true;
 		}
 		return false;
@@ -105,6 +129,7 @@ public class RegionGroup {
 		if(regions.add(region.getName())) {
 			setSetting("regions", new ArrayList<>(regions));
 			saveRequired();
+			plugin.getFileManager().updateMembership(this, region);
 			return true;
 		}
 		return false;
@@ -119,6 +144,7 @@ public class RegionGroup {
 		if(regions.remove(region.getName())) {
 			setSetting("regions", new ArrayList<>(regions));
 			saveRequired();
+			plugin.getFileManager().updateMembership(this, region);
 			return true;
 		}
 		return false;
@@ -148,7 +174,7 @@ public class RegionGroup {
 	 */
 	public Set<GeneralRegion> getMemberRegions() {
 		Set<GeneralRegion> result = new HashSet<>();
-		for(String name : getMembers()) {
+		for(String name : plugin.getFileManager().getMemberNames(this)) {
 			result.add(plugin.getFileManager().getRegion(name));
 		}
 		return result;
@@ -176,7 +202,7 @@ public class RegionGroup {
 	 * @return true if the region is in the group, otherwise false
 	 */
 	public boolean isMember(GeneralRegion region) {
-		return getMembers().contains(region.getName());
+		return regions.contains(region.getName()) || worlds.contains(region.getWorldName());
 	}
 
 	/**
@@ -5,6 +5,7 @@ import me.wiefferink.areashop.events.ask.RentingRegionEvent;
 import me.wiefferink.areashop.events.ask.UnrentingRegionEvent;
 import me.wiefferink.areashop.events.notify.RentedRegionEvent;
 import me.wiefferink.areashop.events.notify.UnrentedRegionEvent;
+import me.wiefferink.areashop.storage.RegionIndex;
 import me.wiefferink.areashop.tools.Utils;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
@@ -19,12 +20,17 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static me.wiefferink.areashop.tools.Utils.millisToHumanFormat;
 
 public class RentRegion extends GeneralRegion {
 	private long warningsDoneUntil = Calendar.getInstance().getTimeInMillis();
+	// Typed copies of the core settings, no initializers because the super constructor sets them
+	private UUID renter;
+	private long rentedUntil;
+	private int timesExtended;
 
 	/**
 	 * Constructor.
@@ -34,6 +40,14 @@ public class RentRegion extends GeneralRegion {
 		super(config);
 	}
 
+	/**
+	 * Constructor, the configuration is loaded when it is needed.
+	 * @param indexEntry The summary of this region
+	 */
+	public RentRegion(RegionIndex.Entry indexEntry) {
+		super(indexEntry);
+	}
+
 	/**
 	 * Create a new RentRegion.
 	 * @param name  The name of the region (correct casing)
@@ -48,6 +62,48 @@ public class RentRegion extends GeneralRegion {
 		return RegionType.RENT;
 	}
 
+	@Override
+	protected void readSettings() {
+		super.readSettings();
+		YamlConfiguration config = getConfig();
+		renter = toUUID(config.getString("rent.renter"));
+		plugin.getNameCache().learn(renter, config.getString("rent.renterName"), false);
+		rentedUntil = config.getLong("rent.rentedUntil");
+		timesExtended = config.getInt("rent.timesExtended");
+		plugin.getFileManager().updateRentSchedule(this);
+		plugin.getFileManager().updateInactivitySchedule(this);
+		plugin.getFileManager().updateOwnership(this);
+	}
+
+	@Override
+	protected void readIndexEntry(RegionIndex.Entry entry) {
+		super.readIndexEntry(entry);
+		renter = entry.getOwner();
+		rentedUntil = entry.getRentedUntil();
+	}
+
+	@Override
+	protected boolean isTypedSetting(String path) {
+		return super.isTypedSetting(path)
+				|| matchesPath(path, "rent.renter")
+				|| matchesPath(path, "rent.rentedUntil")
+				|| matchesPath(path, "rent.timesExtended");
+	}
+
+	@Override
+	protected Set<String> getAffectedTags(String path) {
+		if(isWithinPath(path, "rent.renter")) {
+			return tagSet(AreaShop.tagPlayerName, AreaShop.tagPlayerUUID);
+		} else if(isWithinPath(path, "rent.renterName")) {
+			return tagSet(AreaShop.tagPlayerName);
+		} else if(isWithinPath(path, "rent.rentedUntil")) {
+			return tagSet(AreaShop.tagRentedUntil, AreaShop.tagRentedUntilShort);
+		} else if(isWithinPath(path, "rent.timesExtended")) {
+			return tagSet(AreaShop.tagTimesExtended, AreaShop.tagExtendsLeft);
+		}
+		return super.getAffectedTags(path);
+	}
+
 	@Override
 	public RegionState getState() {
 		if(isRented()) {
@@ -67,15 +123,7 @@ public class RentRegion extends GeneralRegion {
 	 * @return The UUID of the renter
 	 */
 	public UUID getRenter() {
-		String renter = config.getString("rent.renter");
-		if(renter != null) {
-			try {
-				return UUID.fromString(renter);
-			} catch(IllegalArgumentException e) {
-				// Incorrect UUID
-			}
-		}
-		return null;
+		return renter;
 	}
 
 	/**
@@ -88,7 +136,6 @@ public class RentRegion extends GeneralRegion {
 	}
 
 	public boolean isRenter(UUID player) {
-		UUID renter = getRenter();
 		return !(player == null || renter == null) && renter.equals(player);
 	}
 
@@ -119,7 +166,8 @@ public class RentRegion extends GeneralRegion {
 	 * @return The number of times extended
 	 */
 	public int getTimesExtended() {
-		return config.getInt("rent.timesExtended");
+		requireSettings();
+		return timesExtended;
 	}
 
 	/**
@@ -188,9 +236,9 @@ public class RentRegion extends GeneralRegion {
 	 * @return Name of the player renting this region, if unavailable by UUID it will return the old cached name, if that is unavailable it will return &lt;UNKNOWN&gt;
 	 */
 	public String getPlayerName() {
-		String result = Utils.toName(getRenter());
+		String result = plugin.getNameCache().getNameOrRequest(getRenter());
 		if(result == null || result.isEmpty()) {
-			result = config.getString("rent.renterName");
+			result = getConfig().getString("rent.renterName");
 			if(result == null || result.isEmpty()) {
 				result = "<UNKNOWN>";
 			}
@@ -203,7 +251,7 @@ public class RentRegion extends GeneralRegion {
 	 * @return The epoch time until which this region is rented
 	 */
 	public long getRentedUntil() {
-		return getLongSetting("rent.rentedUntil");
+		return rentedUntil;
 	}
 
 	/**
@@ -223,6 +271,10 @@ public class RentRegion extends GeneralRegion {
 	 * @return The price of the region
 	 */
 	public double getPrice() {
+		RegionIndex.Entry entry = getUnloadedEntry();
+		if(entry != null) {
+			return entry.getPrice();
+		}
 		return Math.max(0, Utils.evaluateToDouble(getStringSetting("rent.price"), this));
 	}
 
@@ -278,6 +330,11 @@ public class RentRegion extends GeneralRegion {
 		return Utils.getDurationFromMinutesOrStringInput(getStringSetting("rent.inactiveTimeUntilUnrent"));
 	}
 
+	@Override
+	public long getInactiveTime() {
+		return getInactiveTimeUntilUnrent();
+	}
+
 	/**
 	 * Get a human readable string indicating how long the player can be offline until automatic unrent.
 	 * @return String indicating the inactive time until unrent
@@ -374,43 +431,94 @@ public class RentRegion extends GeneralRegion {
 		if(isDeleted() || !isRented()) {
 			return;
 		}
-		ConfigurationSection profileSection = getConfigurationSectionSetting("rent.expirationWarningProfile", "expirationWarningProfiles");
-		if(profileSection == null) {
+		ExpirationWarningProfile profile = getExpirationWarningProfile();
+		if(profile == null) {
 			return;
 		}
 
 		// Check if a warning needs to be send for each defined point in time
 		Player player = Bukkit.getPlayer(getRenter());
-		long sendUntil = Calendar.getInstance().getTimeInMillis() + (plugin.getConfig().getInt("expireWarning.delay") * 60 * 1000);
-		for(String timeBefore : profileSection.getKeys(false)) {
-			long timeBeforeParsed = Utils.durationStringToLong(timeBefore);
-			if(timeBeforeParsed <= 0) {
-				return;
-			}
-			long checkTime = getRentedUntil() - timeBeforeParsed;
-
+		long sendUntil = Calendar.getInstance().getTimeInMillis() + getExpirationWarningLookahead();
+		for(ExpirationWarningProfile.Warning warning : profile.getWarnings()) {
+			long checkTime = getRentedUntil() - warning.getTimeBefore();
 			if(checkTime > warningsDoneUntil && checkTime <= sendUntil) {
-				List<String> commands;
-				if(profileSection.isConfigurationSection(timeBefore)) {
-					/* Legacy config layout:
-					 *   "1 minute":
-					 *     warnPlayer: true
-					 *     commands: ["say hi"]
-					 */
-					commands = profileSection.getStringList(timeBefore + ".commands");
-					// Warn player
-					if(profileSection.getBoolean(timeBefore + ".warnPlayer") && player != null) {
-						message(player, "rent-expireWarning");
-					}
-				} else {
-					commands = profileSection.getStringList(timeBefore);
+				if(warning.isWarnPlayer() && player != null) {
+					message(player, "rent-expireWarning");
 				}
-				this.runCommands(Bukkit.getConsoleSender(), commands);
+				this.runCommands(Bukkit.getConsoleSender(), warning.getCommands());
 			}
 		}
 		warningsDoneUntil = sendUntil;
 	}
 
+	/**
+	 * Get the time at which sendExpirationWarnings() has to be called for the next warning.
+	 * @return The time of the next warning, or Long.MAX_VALUE if no warnings have to be sent anymore
+	 */
+	public long getNextExpirationWarning() {
+		if(isDeleted() || !isRented()) {
+			return Long.MAX_VALUE;
+		}
+		long next = Long.MAX_VALUE;
+		RegionIndex.Entry entry = getUnloadedEntry();
+		if(entry != null) {
+			// The index has the warning times of the profile, no need to load the configuration
+			for(long timeBefore : entry.getWarningTimes()) {
+				long time = getRentedUntil() - timeBefore;
+				if(time > warningsDoneUntil) {
+					next = time;
+					break;
+				}
+			}
+		} else {
+			ExpirationWarningProfile profile = getExpirationWarningProfile();
+			if(profile != null) {
+				next = profile.getNextWarningTime(getRentedUntil(), warningsDoneUntil);
+			}
+		}
+		if(next == Long.MAX_VALUE) {
+			return next;
+		}
+		return next - getExpirationWarningLookahead();
+	}
+
+	/**
+	 * Get the compiled expiration warning profile of this region.
+	 * @return The profile, or null if the region does not have one
+	 */
+	private ExpirationWarningProfile getExpirationWarningProfile() {
+		ConfigurationSection profileSection = getConfigurationSectionSetting("rent.expirationWarningProfile", "expirationWarningProfiles");
+		if(profileSection == null) {
+			return null;
+		}
+		return ExpirationWarningProfile.get(profileSection);
+	}
+
+	/**
+	 * Get the times before expiration at which the expiration warning profile of this region sends warnings.
+	 * @return The times in milliseconds, longest first, empty if the region has no profile
+	 */
+	long[] getExpirationWarningTimes() {
+		ExpirationWarningProfile profile = getExpirationWarningProfile();
+		if(profile == null) {
+			return new long[0];
+		}
+		List<ExpirationWarningProfile.Warning> warnings = profile.getWarnings();
+		long[] result = new long[warnings.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = warnings.get(i).getTimeBefore();
+		}
+		return result;
+	}
+
+	/**
+	 * Get how long in advance expiration warnings are sent.
+	 * @return The time in milliseconds
+	 */
+	private long getExpirationWarningLookahead() {
+		return plugin.getConfig().getInt("expireWarning.delay") * 60 * 1000;
+	}
+
 	/**
 	 * Try to extend the rent for the current owner, respecting all restrictions.
 	 * @return true if successful, otherwise false
@@ -468,7 +576,7 @@ public class RentRegion extends GeneralRegion {
 				}
 
 				// Check region limits if this is not extending
-				if(!(extend && config.getBoolean("allowRegionExtendsWhenAboveLimits"))) {
+				if(!(extend && getConfig().getBoolean("allowRegionExtendsWhenAboveLimits"))) {
 
 					LimitResult limitResult;
 					if(extend) {
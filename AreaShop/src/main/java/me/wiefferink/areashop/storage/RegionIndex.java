@@ -0,0 +1,339 @@
+package me.wiefferink.areashop.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Compact summary of all regions, written at shutdown so that the next startup does not have to parse all regions.
+ * The file is removed when it has been read, a crash therefore never leaves an outdated index behind.
+ * The index is only valid for the state of the RegionStore it has been written for, this is checked with a stamp.
+ */
+public class RegionIndex {
+
+	private static final int MAGIC = 0x41534958; // ASIX
+	private static final int VERSION = 5;
+
+	private final Collection<Entry> entries;
+	private final Collection<String> invalid;
+	private long written;
+
+	/**
+	 * Constructor.
+	 * @param entries The summaries of the regions that are registered
+	 * @param invalid The lowercase names of stored regions that could not be registered, these are checked completely at startup
+	 */
+	public RegionIndex(Collection<Entry> entries, Collection<String> invalid) {
+		this.entries = entries;
+		this.invalid = invalid;
+	}
+
+	/**
+	 * Get the summaries of the regions that are registered.
+	 * @return The index entries
+	 */
+	public Collection<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Get the stored regions that could not be registered because of problems.
+	 * @return The lowercase names of the regions
+	 */
+	public Collection<String> getInvalid() {
+		return invalid;
+	}
+
+	/**
+	 * Get the time the index has been written, the signs of the regions showed the state of that moment.
+	 * @return The time in milliseconds since epoch, 0 if the index has not been read from a file
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Write the index.
+	 * @param file  The file to write to
+	 * @param stamp The stamp of the store and configuration files the index belongs to
+	 * @throws IOException when writing failed
+	 */
+	public void write(File file, long stamp) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(stamp);
+			out.writeLong(System.currentTimeMillis());
+			out.writeInt(entries.size());
+			for(Entry entry : entries) {
+				out.writeUTF(entry.name);
+				out.writeUTF(entry.type);
+				out.writeUTF(entry.world);
+				out.writeBoolean(entry.owner != null);
+				if(entry.owner != null) {
+					out.writeLong(entry.owner.getMostSignificantBits());
+					out.writeLong(entry.owner.getLeastSignificantBits());
+				}
+				out.writeUTF(entry.state);
+				out.writeLong(entry.rentedUntil);
+				out.writeDouble(entry.price);
+				out.writeInt(entry.friends.size());
+				for(UUID friend : entry.friends) {
+					out.writeLong(friend.getMostSignificantBits());
+					out.writeLong(friend.getLeastSignificantBits());
+				}
+				out.writeLong(entry.lastActive);
+				out.writeLong(entry.inactiveTime);
+				out.writeInt(entry.warningTimes.length);
+				for(long warningTime : entry.warningTimes) {
+					out.writeLong(warningTime);
+				}
+				out.writeInt(entry.signs.size());
+				for(SignPosition sign : entry.signs) {
+					out.writeUTF(sign.key);
+					out.writeUTF(sign.world);
+					out.writeInt(sign.x);
+					out.writeInt(sign.y);
+					out.writeInt(sign.z);
+				}
+				out.writeBoolean(entry.signsTimeDependent);
+			}
+			out.writeInt(invalid.size());
+			for(String name : invalid) {
+				out.writeUTF(name);
+			}
+		}
+		try {
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Read the index.
+	 * @param file  The file to read from
+	 * @param stamp The current stamp of the store and configuration files
+	 * @return The index, or null if there is no index or it does not match the stamp
+	 * @throws IOException when reading failed or the file is not a valid index
+	 */
+	public static RegionIndex read(File file, long stamp) throws IOException {
+		if(!file.isFile()) {
+			return null;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a region index of this version: " + file.getAbsolutePath());
+			}
+			if(in.readLong() != stamp) {
+				return null;
+			}
+			long written = in.readLong();
+			int size = in.readInt();
+			List<Entry> result = new ArrayList<>(size);
+			for(int i = 0; i < size; i++) {
+				String name = in.readUTF();
+				String type = in.readUTF();
+				String world = in.readUTF();
+				UUID owner = null;
+				if(in.readBoolean()) {
+					owner = new UUID(in.readLong(), in.readLong());
+				}
+				String state = in.readUTF();
+				long rentedUntil = in.readLong();
+				double price = in.readDouble();
+				int friendCount = in.readInt();
+				Set<UUID> friends = new HashSet<>();
+				for(int j = 0; j < friendCount; j++) {
+					friends.add(new UUID(in.readLong(), in.readLong()));
+				}
+				long lastActive = in.readLong();
+				long inactiveTime = in.readLong();
+				long[] warningTimes = new long[in.readInt()];
+				for(int j = 0; j < warningTimes.length; j++) {
+					warningTimes[j] = in.readLong();
+				}
+				int signCount = in.readInt();
+				List<SignPosition> signs = new ArrayList<>(signCount);
+				for(int j = 0; j < signCount; j++) {
+					signs.add(new SignPosition(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt()));
+				}
+				boolean signsTimeDependent = in.readBoolean();
+				result.add(new Entry(name, type, world, owner, state, rentedUntil, price, friends, lastActive, inactiveTime, warningTimes, signs, signsTimeDependent));
+			}
+			int invalidSize = in.readInt();
+			List<String> invalid = new ArrayList<>(invalidSize);
+			for(int i = 0; i < invalidSize; i++) {
+				invalid.add(in.readUTF());
+			}
+			RegionIndex index = new RegionIndex(result, invalid);
+			index.written = written;
+			return index;
+		}
+	}
+
+	/**
+	 * Summary of a single region.
+	 */
+	public static class Entry {
+		private final String name;
+		private final String type;
+		private final String world;
+		private final UUID owner;
+		private final String state;
+		private final long rentedUntil;
+		private final double price;
+		private final Set<UUID> friends;
+		private final long lastActive;
+		private final long inactiveTime;
+		private final long[] warningTimes;
+		private final List<SignPosition> signs;
+		private final boolean signsTimeDependent;
+
+		/**
+		 * Constructor.
+		 * @param name               The name of the region (correct casing)
+		 * @param type               The type of the region (rent or buy)
+		 * @param world              The name of the world the region is in
+		 * @param owner              The renter or buyer of the region, null if there is none
+		 * @param state              The state of the region
+		 * @param rentedUntil        Time until the region is rented, 0 for buy regions
+		 * @param price              The price of the region
+		 * @param friends            The friends of the region
+		 * @param lastActive         The stored time the owner was last active, 0 if unknown
+		 * @param inactiveTime       The time the owner can be inactive before the region is unrented/sold, 0 or lower if disabled
+		 * @param warningTimes       The times before expiration at which expiration warnings are sent, longest first, empty for buy regions
+		 * @param signs              The positions of the signs of the region
+		 * @param signsTimeDependent true if the signs display tags that change when time passes (like timeleft), otherwise false
+		 */
+		public Entry(String name, String type, String world, UUID owner, String state, long rentedUntil, double price, Set<UUID> friends, long lastActive, long inactiveTime, long[] warningTimes, List<SignPosition> signs, boolean signsTimeDependent) {
+			this.name = name;
+			this.type = type;
+			this.world = world;
+			this.owner = owner;
+			this.state = state;
+			this.rentedUntil = rentedUntil;
+			this.price = price;
+			this.friends = friends;
+			this.lastActive = lastActive;
+			this.inactiveTime = inactiveTime;
+			this.warningTimes = warningTimes;
+			this.signs = signs;
+			this.signsTimeDependent = signsTimeDependent;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getWorld() {
+			return world;
+		}
+
+		public UUID getOwner() {
+			return owner;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		public long getRentedUntil() {
+			return rentedUntil;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public Set<UUID> getFriends() {
+			return friends;
+		}
+
+		public long getLastActive() {
+			return lastActive;
+		}
+
+		public long getInactiveTime() {
+			return inactiveTime;
+		}
+
+		public long[] getWarningTimes() {
+			return warningTimes;
+		}
+
+		public List<SignPosition> getSigns() {
+			return signs;
+		}
+
+		public boolean isSignsTimeDependent() {
+			return signsTimeDependent;
+		}
+	}
+
+	/**
+	 * Position of a sign of a region, used to register the sign without loading the region.
+	 */
+	public static class SignPosition {
+		private final String key;
+		private final String world;
+		private final int x;
+		private final int y;
+		private final int z;
+
+		/**
+		 * Constructor.
+		 * @param key   The key of the sign in the config of the region
+		 * @param world The name of the world the sign is in
+		 * @param x     The x coordinate of the sign
+		 * @param y     The y coordinate of the sign
+		 * @param z     The z coordinate of the sign
+		 */
+		public SignPosition(String key, String world, int x, int y, int z) {
+			this.key = key;
+			this.world = world;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getWorld() {
+			return world;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public int getZ() {
+			return z;
+		}
+	}
+}
@@ -0,0 +1,490 @@
+package me.wiefferink.areashop.storage;
+
+import me.wiefferink.areashop.AreaShop;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of region changes, used to recover changes that did not reach the RegionStore before a crash.
+ * Records are collected in memory on the main thread and written + synced to disk in batches by a background thread.
+ * The journal is split in segments, at the start of a save round a new segment is started. When all regions have been
+ * saved the older segments are not required anymore and are deleted.
+ */
+public class RegionJournal {
+
+	private static final String EXTENSION = ".journal";
+
+	// Record types
+	public static final byte SET = 1;
+	public static final byte CREATE = 2;
+	public static final byte DELETE = 3;
+
+	// Value types of SET records
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_STRING = 1;
+	private static final byte VALUE_INTEGER = 2;
+	private static final byte VALUE_LONG = 3;
+	private static final byte VALUE_DOUBLE = 4;
+	private static final byte VALUE_BOOLEAN = 5;
+	private static final byte VALUE_YAML = 6;
+
+	private final File folder;
+	private final Object lock = new Object();
+	// Only accessed with the lock
+	private ByteArrayOutputStream buffer;
+	private FileChannel channel;
+	private File segment;
+	private long segmentNumber;
+	// Only accessed from the main thread
+	private YamlConfiguration valueHolder;
+	private boolean recording;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Constructor.
+	 * @param folder The folder to store the journal segments in
+	 */
+	public RegionJournal(File folder) {
+		this.folder = folder;
+		this.buffer = new ByteArrayOutputStream();
+		this.valueHolder = new YamlConfiguration();
+	}
+
+	/**
+	 * Start a new segment and start writing records to it.
+	 * @param flushInterval Time between writing the collected records to disk in milliseconds
+	 * @throws IOException when the segment could not be created
+	 */
+	public void open(long flushInterval) throws IOException {
+		if(!folder.exists() && !folder.mkdirs()) {
+			throw new IOException("Could not create journal directory: " + folder.getAbsolutePath());
+		}
+		synchronized(lock) {
+			for(File existing : getSegments()) {
+				segmentNumber = Math.max(segmentNumber, getSegmentNumber(existing));
+			}
+			startSegment();
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		recording = true;
+	}
+
+	/**
+	 * Check if the journal is open.
+	 * @return true if records are written, otherwise false
+	 */
+	public boolean isOpen() {
+		return executor != null;
+	}
+
+	/**
+	 * Temporarily stop recording changes, used while replaying the journal.
+	 * @param recording true to record changes, false to ignore them
+	 */
+	public void setRecording(boolean recording) {
+		this.recording = recording && isOpen();
+	}
+
+	/**
+	 * Record a change of a region setting.
+	 * @param region The lowercase name of the region
+	 * @param path   The path of the setting
+	 * @param value  The new value
+	 */
+	public void recordSet(String region, String path, Object value) {
+		if(!recording) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(region);
+			out.writeUTF(path);
+			if(value == null) {
+				out.writeByte(VALUE_NULL);
+			} else if(value instanceof String) {
+				out.writeByte(VALUE_STRING);
+				writeString(out, (String)value);
+			} else if(value instanceof Integer) {
+				out.writeByte(VALUE_INTEGER);
+				out.writeInt((Integer)value);
+			} else if(value instanceof Long) {
+				out.writeByte(VALUE_LONG);
+				out.writeLong((Long)value);
+			} else if(value instanceof Double) {
+				out.writeByte(VALUE_DOUBLE);
+				out.writeDouble((Double)value);
+			} else if(value instanceof Boolean) {
+				out.writeByte(VALUE_BOOLEAN);
+				out.writeBoolean((Boolean)value);
+			} else {
+				// Lists, sections and anything else are stored the same way as in the region file
+				valueHolder.set("value", value);
+				out.writeByte(VALUE_YAML);
+				writeString(out, valueHolder.saveToString());
+				valueHolder.set("value", null);
+			}
+			append(SET, bytes.toByteArray());
+		} catch(IOException e) {
+			AreaShop.warn("Could not journal change of " + path + " for region " + region + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Record the addition of a region.
+	 * @param snapshot The state of the region when it was added
+	 */
+	public void recordCreate(RegionSnapshot snapshot) {
+		if(!recording) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(snapshot.getName());
+			writeString(out, snapshot.getData());
+			append(CREATE, bytes.toByteArray());
+		} catch(IOException e) {
+			AreaShop.warn("Could not journal addition of region " + snapshot.getName() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Record the removal of a region.
+	 * @param region The lowercase name of the region
+	 */
+	public void recordDelete(String region) {
+		if(!recording) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new DataOutputStream(bytes).writeUTF(region);
+			append(DELETE, bytes.toByteArray());
+		} catch(IOException e) {
+			AreaShop.warn("Could not journal removal of region " + region + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Add a record to the buffer, framed with its length and a checksum to detect partially written records.
+	 * @param type    The type of record
+	 * @param payload The content of the record
+	 * @throws IOException when writing to the buffer failed
+	 */
+	private void append(byte type, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+		synchronized(lock) {
+			DataOutputStream out = new DataOutputStream(buffer);
+			out.writeInt(payload.length);
+			out.writeByte(type);
+			out.write(payload);
+			out.writeLong(crc.getValue());
+		}
+	}
+
+	/**
+	 * Write the collected records to the current segment and sync it to disk.
+	 */
+	public void flush() {
+		synchronized(lock) {
+			if(channel == null || buffer.size() == 0) {
+				return;
+			}
+			try {
+				ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+				while(bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+				channel.force(false);
+				buffer.reset();
+			} catch(IOException e) {
+				AreaShop.warn("Could not write the region journal: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Close the current segment and start a new one.
+	 * @return The segments that existed before, these can be deleted when all regions have been saved
+	 */
+	public List<File> rotate() {
+		synchronized(lock) {
+			flush();
+			List<File> result = getSegments();
+			if(channel != null) {
+				closeSegment();
+				try {
+					startSegment();
+				} catch(IOException e) {
+					AreaShop.warn("Could not start a new region journal segment: " + e.getMessage());
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Delete segments that are not required anymore.
+	 * @param segments The segments to delete
+	 */
+	public void deleteSegments(List<File> segments) {
+		synchronized(lock) {
+			for(File file : segments) {
+				if(!file.equals(segment) && file.exists() && !file.delete()) {
+					AreaShop.warn("Could not delete region journal segment: " + file.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get all segments on disk that are not being written to, oldest first.
+	 * @return List of segment files
+	 */
+	public List<File> getSegments() {
+		List<File> result = new ArrayList<>();
+		File[] files = folder.listFiles();
+		if(files == null) {
+			return result;
+		}
+		for(File file : files) {
+			if(file.isFile() && file.getName().endsWith(EXTENSION) && getSegmentNumber(file) >= 0 && !file.equals(segment)) {
+				result.add(file);
+			}
+		}
+		result.sort((a, b) -> Long.compare(getSegmentNumber(a), getSegmentNumber(b)));
+		return result;
+	}
+
+	/**
+	 * Read all records of the given segments.
+	 * A partially written record at the end of a segment (crash while writing) ends reading that segment.
+	 * @param segments The segments to read
+	 * @return The records in the order they have been written
+	 */
+	public List<Record> read(List<File> segments) {
+		List<Record> result = new ArrayList<>();
+		for(File file : segments) {
+			try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+				while(in.available() > 0) {
+					int length = in.readInt();
+					byte type = in.readByte();
+					if(length < 0 || length > in.available()) {
+						throw new EOFException();
+					}
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+					CRC32 crc = new CRC32();
+					crc.update(type);
+					crc.update(payload);
+					if(in.readLong() != crc.getValue()) {
+						throw new EOFException();
+					}
+					result.add(decode(type, payload));
+				}
+			} catch(EOFException e) {
+				AreaShop.warn("Region journal segment " + file.getName() + " ends with an incomplete record, it has been skipped");
+			} catch(IOException | InvalidConfigurationException e) {
+				AreaShop.warn("Could not read region journal segment " + file.getName() + ": " + e.getMessage());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Write everything that is left and stop the journal.
+	 */
+	public void close() {
+		recording = false;
+		if(executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		synchronized(lock) {
+			flush();
+			closeSegment();
+		}
+	}
+
+	/**
+	 * Decode a record.
+	 * @param type    The type of the record
+	 * @param payload The content of the record
+	 * @return The decoded record
+	 * @throws IOException                   when the record is invalid
+	 * @throws InvalidConfigurationException when a YAML value is invalid
+	 */
+	private Record decode(byte type, byte[] payload) throws IOException, InvalidConfigurationException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		String region = in.readUTF();
+		if(type == CREATE) {
+			return new Record(type, region, null, readString(in));
+		} else if(type == DELETE) {
+			return new Record(type, region, null, null);
+		} else if(type != SET) {
+			throw new IOException("Unknown record type " + type);
+		}
+		String path = in.readUTF();
+		Object value;
+		byte valueType = in.readByte();
+		switch(valueType) {
+			case VALUE_NULL:
+				value = null;
+				break;
+			case VALUE_STRING:
+				value = readString(in);
+				break;
+			case VALUE_INTEGER:
+				value = in.readInt();
+				break;
+			case VALUE_LONG:
+				value = in.readLong();
+				break;
+			case VALUE_DOUBLE:
+				value = in.readDouble();
+				break;
+			case VALUE_BOOLEAN:
+				value = in.readBoolean();
+				break;
+			case VALUE_YAML:
+				YamlConfiguration holder = new YamlConfiguration();
+				holder.loadFromString(readString(in));
+				value = holder.get("value");
+				break;
+			default:
+				throw new IOException("Unknown value type " + valueType);
+		}
+		return new Record(type, region, path, value);
+	}
+
+	/**
+	 * Open a new segment file, the lock should be held.
+	 * @throws IOException when the file could not be created
+	 */
+	private void startSegment() throws IOException {
+		segmentNumber++;
+		segment = new File(folder, segmentNumber + EXTENSION);
+		channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Close the current segment file, the lock should be held.
+	 */
+	private void closeSegment() {
+		if(channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch(IOException e) {
+			AreaShop.warn("Could not close region journal segment: " + e.getMessage());
+		}
+		channel = null;
+		segment = null;
+	}
+
+	/**
+	 * Get the number of a segment from its file name.
+	 * @param file The segment file
+	 * @return The number of the segment, or -1 if the name is invalid
+	 */
+	private static long getSegmentNumber(File file) {
+		String name = file.getName();
+		try {
+			return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Write a string without the length limit of writeUTF().
+	 * @param out    The stream to write to
+	 * @param string The string to write
+	 * @throws IOException when writing failed
+	 */
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string written by writeString().
+	 * @param in The stream to read from
+	 * @return The string
+	 * @throws IOException when reading failed
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A change of a region read from the journal.
+	 */
+	public static class Record {
+		private final byte type;
+		private final String region;
+		private final String path;
+		private final Object value;
+
+		/**
+		 * Constructor.
+		 * @param type   The type of record: SET, CREATE or DELETE
+		 * @param region The lowercase name of the region
+		 * @param path   The changed path for SET records, otherwise null
+		 * @param value  The new value for SET records, the serialized region for CREATE records, otherwise null
+		 */
+		Record(byte type, String region, String path, Object value) {
+			this.type = type;
+			this.region = region;
+			this.path = path;
+			this.value = value;
+		}
+
+		public byte getType() {
+			return type;
+		}
+
+		public String getRegion() {
+			return region;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+	}
+}
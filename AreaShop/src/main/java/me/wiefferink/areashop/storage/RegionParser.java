@@ -0,0 +1,102 @@
+package me.wiefferink.areashop.storage;
+
+import me.wiefferink.areashop.AreaShop;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses serialized regions, optionally spread over multiple threads.
+ */
+class RegionParser {
+
+	/**
+	 * Provides the serialized data of a region.
+	 */
+	interface Source {
+		/**
+		 * Read the serialized region.
+		 * @return The region as YAML string
+		 * @throws IOException when reading failed
+		 */
+		String read() throws IOException;
+	}
+
+	private RegionParser() {
+	}
+
+	/**
+	 * Read and parse regions, the result has the same order as the sources.
+	 * @param sources Map from the description of a source to the source itself
+	 * @param threads The number of threads to use, 1 to read them on the current thread
+	 * @return Map from the description of a source to the parsed region, null for regions that could not be read
+	 */
+	static Map<String, YamlConfiguration> parseAll(Map<String, Source> sources, int threads) {
+		Map<String, YamlConfiguration> result = new LinkedHashMap<>();
+		threads = Math.min(threads, sources.size());
+		if(threads <= 1) {
+			for(Map.Entry<String, Source> source : sources.entrySet()) {
+				result.put(source.getKey(), parse(source.getKey(), source.getValue()));
+			}
+			return result;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop region loading");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<String> names = new ArrayList<>(sources.keySet());
+			List<Future<YamlConfiguration>> futures = new ArrayList<>(sources.size());
+			for(Map.Entry<String, Source> source : sources.entrySet()) {
+				futures.add(executor.submit(() -> parse(source.getKey(), source.getValue())));
+			}
+			for(int i = 0; i < futures.size(); i++) {
+				try {
+					result.put(names.get(i), futures.get(i).get());
+				} catch(ExecutionException e) {
+					AreaShop.warn("Something went wrong reading region: " + names.get(i) + ", error: " + e.getCause());
+					result.put(names.get(i), null);
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			AreaShop.error("Interrupted while loading regions, not all regions have been loaded");
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Read and parse a single region.
+	 * @param name   Description of the source, used in warnings
+	 * @param source The source to read from
+	 * @return The parsed region, or null if it could not be read
+	 */
+	private static YamlConfiguration parse(String name, Source source) {
+		YamlConfiguration config = new YamlConfiguration();
+		try {
+			config.loadFromString(source.read());
+		} catch(IOException e) {
+			AreaShop.warn("Something went wrong reading region: " + name);
+			return null;
+		} catch(InvalidConfigurationException e) {
+			AreaShop.warn("Region '" + name + "' contains invalid YAML: " + e.getMessage());
+		}
+		if(config.getKeys(false).size() == 0) {
+			AreaShop.warn("Region '" + name + "' is empty, check for errors in the log.");
+		}
+		return config;
+	}
+}
@@ -0,0 +1,222 @@
+package me.wiefferink.areashop.storage;
+
+import me.wiefferink.areashop.AreaShop;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes regions to the RegionStore on a background thread.
+ * Serializing a region happens on the main thread, this class only takes care of the I/O.
+ * Snapshots of a region that are still waiting to be written are coalesced, only the newest one will be written.
+ * Because there is at most one queued task per region the queue is bounded by the number of regions.
+ */
+public class RegionSaveQueue {
+
+	// Marker for a region file that should be deleted instead of written
+	private static final Object DELETE = new Object();
+
+	private volatile RegionStore store;
+	// Region that is currently being written
+	private volatile String current;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentHashMap<String, Object> pending;
+	private final AtomicLong written;
+	private final AtomicLong coalesced;
+	private final AtomicLong failed;
+
+	/**
+	 * Constructor.
+	 * @param store The store the regions should be written to
+	 */
+	public RegionSaveQueue(RegionStore store) {
+		this.store = store;
+		this.pending = new ConcurrentHashMap<>();
+		this.written = new AtomicLong();
+		this.coalesced = new AtomicLong();
+		this.failed = new AtomicLong();
+		// One thread only, this guarantees that writes to the same file are never done in parallel or out of order
+		this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop region saving");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Get the store regions are written to.
+	 * @return The RegionStore
+	 */
+	public RegionStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Change the store regions are written to, pending writes should be flushed before calling this.
+	 * @param store The new RegionStore
+	 */
+	public void setStore(RegionStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Queue a snapshot of a region to be written.
+	 * @param snapshot The serialized region
+	 */
+	public void save(RegionSnapshot snapshot) {
+		submit(snapshot.getName(), snapshot);
+	}
+
+	/**
+	 * Queue the removal of a region, cancels any writes of it that are still pending.
+	 * @param name The lowercase name of the region
+	 */
+	public void delete(String name) {
+		submit(name, DELETE);
+	}
+
+	/**
+	 * Add an operation for a region, replacing the pending operation if there is one.
+	 * @param name      The lowercase name of the region
+	 * @param operation The RegionSnapshot or DELETE
+	 */
+	private void submit(String name, Object operation) {
+		if(pending.put(name, operation) != null) {
+			// Task is already queued, it will pick up the newest operation
+			coalesced.incrementAndGet();
+			return;
+		}
+		try {
+			executor.execute(() -> process(name));
+		} catch(RejectedExecutionException e) {
+			// Queue has been shut down already, do it on this thread instead
+			process(name);
+		}
+	}
+
+	/**
+	 * Perform the latest operation that has been submitted for a region.
+	 * @param name The lowercase name of the region
+	 */
+	private void process(String name) {
+		// Set current before removing from pending, isBusy() should not miss the region in between
+		current = name;
+		Object operation = pending.remove(name);
+		if(operation == null) {
+			current = null;
+			return;
+		}
+		try {
+			if(operation == DELETE) {
+				store.delete(name);
+			} else {
+				store.save((RegionSnapshot)operation);
+				written.incrementAndGet();
+			}
+		} catch(IOException e) {
+			failed.incrementAndGet();
+			AreaShop.warn("Region " + name + " could not be " + (operation == DELETE ? "deleted" : "saved") + ": " + e.getMessage());
+		} finally {
+			current = null;
+		}
+	}
+
+	/**
+	 * Check if a region has operations that are not done yet.
+	 * @param name The lowercase name of the region
+	 * @return true if the region is waiting to be written or being written, otherwise false
+	 */
+	public boolean isBusy(String name) {
+		return pending.containsKey(name) || name.equals(current);
+	}
+
+	/**
+	 * Run a task on the saving thread after all operations that are currently queued have been done.
+	 * @param task The task to run
+	 */
+	public void afterPending(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch(RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Wait until all operations that are currently queued have been written to disk.
+	 * @param timeout Maximum time to wait in milliseconds
+	 * @return true if everything has been written, false if the timeout has been reached or waiting failed
+	 */
+	public boolean flush(long timeout) {
+		Future<?> barrier;
+		try {
+			barrier = executor.submit(() -> {});
+		} catch(RejectedExecutionException e) {
+			return pending.isEmpty();
+		}
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch(ExecutionException | TimeoutException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Write everything that is pending and stop the saving thread.
+	 * @param timeout Maximum time to wait in milliseconds
+	 * @return true if everything has been written, otherwise false
+	 */
+	public boolean shutdown(long timeout) {
+		executor.shutdown();
+		try {
+			return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Get the number of regions that are waiting to be written.
+	 * @return The number of pending region writes
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Get the number of regions written since startup.
+	 * @return The number of writes
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * Get the number of regions that could not be saved or deleted since startup.
+	 * @return The number of failed operations
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Get the number of snapshots that have been replaced by a newer one before being written.
+	 * @return The number of coalesced writes
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+}
@@ -0,0 +1,58 @@
+package me.wiefferink.areashop.storage;
+
+/**
+ * Serialized state of a region at a certain moment, created on the main thread so that it can be written on another thread.
+ */
+public class RegionSnapshot {
+
+	private final String name;
+	private final String type;
+	private final String world;
+	private final String data;
+
+	/**
+	 * Constructor.
+	 * @param name  The lowercase name of the region
+	 * @param type  The type of the region (rent or buy)
+	 * @param world The name of the world the region is in
+	 * @param data  The region configuration serialized as YAML
+	 */
+	public RegionSnapshot(String name, String type, String world, String data) {
+		this.name = name;
+		this.type = type;
+		this.world = world;
+		this.data = data;
+	}
+
+	/**
+	 * Get the lowercase name of the region.
+	 * @return The name of the region
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the type of the region.
+	 * @return The type of the region (rent or buy)
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Get the name of the world the region is in.
+	 * @return The world name
+	 */
+	public String getWorld() {
+		return world;
+	}
+
+	/**
+	 * Get the serialized region configuration.
+	 * @return The configuration as YAML string
+	 */
+	public String getData() {
+		return data;
+	}
+}
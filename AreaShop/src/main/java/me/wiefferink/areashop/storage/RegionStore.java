@@ -0,0 +1,90 @@
+package me.wiefferink.areashop.storage;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent storage of regions.
+ * Except for loadAll(), methods of a store are only called from the thread of the RegionSaveQueue or while it is idle.
+ */
+public interface RegionStore {
+
+	/**
+	 * Get the name of this type of store, as used in the 'storage.type' setting.
+	 * @return The type name
+	 */
+	String getType();
+
+	/**
+	 * Load all regions from the store.
+	 * @param threads The number of threads that may be used for parsing
+	 * @return Map from a description of the source of a region (used in warnings) to its configuration, null for regions that could not be read
+	 * @throws IOException when the store could not be read at all
+	 */
+	Map<String, YamlConfiguration> loadAll(int threads) throws IOException;
+
+	/**
+	 * Get the names of all regions in the store.
+	 * @return Set with the lowercase names of the stored regions
+	 * @throws IOException when the store could not be read
+	 */
+	Set<String> getNames() throws IOException;
+
+	/**
+	 * Load a single region from the store.
+	 * @param name The lowercase name of the region
+	 * @return The configuration of the region, or null if it is not stored
+	 * @throws IOException when the region could not be read
+	 */
+	YamlConfiguration load(String name) throws IOException;
+
+	/**
+	 * Save a region, replacing the current data of it if it is stored already.
+	 * @param snapshot The region to save
+	 * @throws IOException when the region could not be saved
+	 */
+	void save(RegionSnapshot snapshot) throws IOException;
+
+	/**
+	 * Save a collection of regions at once.
+	 * @param snapshots The regions to save
+	 * @throws IOException when one of the regions could not be saved
+	 */
+	default void saveAll(Collection<RegionSnapshot> snapshots) throws IOException {
+		for(RegionSnapshot snapshot : snapshots) {
+			save(snapshot);
+		}
+	}
+
+	/**
+	 * Delete a region from the store, does nothing when it is not stored.
+	 * @param name The lowercase name of the region
+	 * @throws IOException when the region could not be deleted
+	 */
+	void delete(String name) throws IOException;
+
+	/**
+	 * Move the data of a region to another name.
+	 * The data itself is not changed, the region should be saved again to update the name inside of it.
+	 * @param from The current lowercase name of the region
+	 * @param to   The new lowercase name of the region
+	 * @throws IOException when the region could not be renamed
+	 */
+	void rename(String from, String to) throws IOException;
+
+	/**
+	 * Get a value that changes when the stored data is modified, also by other programs.
+	 * Can also be called after close().
+	 * @return The current stamp of the store
+	 */
+	long getStamp();
+
+	/**
+	 * Close the store and release the resources it uses.
+	 */
+	void close();
+}
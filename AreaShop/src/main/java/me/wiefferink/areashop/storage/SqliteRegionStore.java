@@ -0,0 +1,218 @@
+package me.wiefferink.areashop.storage;
+
+import me.wiefferink.areashop.AreaShop;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores all regions in a single SQLite database file.
+ * The type and world of a region are stored in indexed columns, the rest of the region is stored as YAML.
+ * Regions are always loaded and saved as a whole and the region index has the fields needed without loading,
+ * so the other settings are not split over columns, this keeps the format the same as the YAML store.
+ * Reads use their own connection, with WAL they do not have to wait for a save transaction to complete.
+ * The SQLite driver is shipped with the server, so this does not need an extra dependency.
+ */
+public class SqliteRegionStore implements RegionStore {
+
+	public static final String TYPE = "sqlite";
+
+	private final File file;
+	// Used for writing, guarded by this store
+	private final Connection connection;
+	// Used for reading, guarded by readLock
+	private final Connection readConnection;
+	private final Object readLock = new Object();
+
+	/**
+	 * Constructor, opens the database and creates the tables if required.
+	 * @param file The database file
+	 * @throws IOException when the database could not be opened
+	 */
+	public SqliteRegionStore(File file) throws IOException {
+		this.file = file;
+		try {
+			Class.forName("org.sqlite.JDBC");
+			connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+			try(Statement statement = connection.createStatement()) {
+				statement.execute("PRAGMA journal_mode=WAL");
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS regions (name TEXT PRIMARY KEY NOT NULL, type TEXT NOT NULL, world TEXT, data TEXT NOT NULL)");
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS regions_type ON regions (type)");
+				statement.executeUpdate("CREATE INDEX IF NOT EXISTS regions_world ON regions (world)");
+			}
+			readConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+			try(Statement statement = readConnection.createStatement()) {
+				statement.execute("PRAGMA query_only=true");
+			}
+		} catch(ClassNotFoundException e) {
+			throw new IOException("SQLite driver is not available on this server", e);
+		} catch(SQLException e) {
+			throw new IOException("Could not open database " + file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public Map<String, YamlConfiguration> loadAll(int threads) throws IOException {
+		// Read all rows at once, only parsing is spread over threads
+		Map<String, RegionParser.Source> sources = new LinkedHashMap<>();
+		synchronized(readLock) {
+			try(
+					Statement statement = readConnection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT name, data FROM regions")
+			) {
+				while(result.next()) {
+					String data = result.getString("data");
+					sources.put(file.getName() + ":" + result.getString("name"), () -> data);
+				}
+			} catch(SQLException e) {
+				throw new IOException("Could not read regions from " + file.getAbsolutePath(), e);
+			}
+		}
+		return RegionParser.parseAll(sources, threads);
+	}
+
+	@Override
+	public Set<String> getNames() throws IOException {
+		Set<String> result = new HashSet<>();
+		synchronized(readLock) {
+			try(
+					Statement statement = readConnection.createStatement();
+					ResultSet names = statement.executeQuery("SELECT name FROM regions")
+			) {
+				while(names.next()) {
+					result.add(names.getString("name"));
+				}
+			} catch(SQLException e) {
+				throw new IOException("Could not read regions from " + file.getAbsolutePath(), e);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public YamlConfiguration load(String name) throws IOException {
+		String data;
+		synchronized(readLock) {
+			try(PreparedStatement statement = readConnection.prepareStatement("SELECT data FROM regions WHERE name = ?")) {
+				statement.setString(1, name);
+				try(ResultSet result = statement.executeQuery()) {
+					if(!result.next()) {
+						return null;
+					}
+					data = result.getString("data");
+				}
+			} catch(SQLException e) {
+				throw new IOException("Could not read region " + name + " from " + file.getAbsolutePath(), e);
+			}
+		}
+		try {
+			YamlConfiguration config = new YamlConfiguration();
+			config.loadFromString(data);
+			return config;
+		} catch(InvalidConfigurationException e) {
+			throw new IOException("Region " + name + " contains invalid YAML", e);
+		}
+	}
+
+	@Override
+	public synchronized void save(RegionSnapshot snapshot) throws IOException {
+		try(PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO regions (name, type, world, data) VALUES (?, ?, ?, ?)")) {
+			bind(statement, snapshot);
+			statement.executeUpdate();
+		} catch(SQLException e) {
+			throw new IOException("Could not save region " + snapshot.getName() + " to " + file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public synchronized void saveAll(Collection<RegionSnapshot> snapshots) throws IOException {
+		try {
+			connection.setAutoCommit(false);
+			try(PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO regions (name, type, world, data) VALUES (?, ?, ?, ?)")) {
+				for(RegionSnapshot snapshot : snapshots) {
+					bind(statement, snapshot);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				connection.commit();
+			} catch(SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch(SQLException e) {
+			throw new IOException("Could not save regions to " + file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public synchronized void delete(String name) throws IOException {
+		try(PreparedStatement statement = connection.prepareStatement("DELETE FROM regions WHERE name = ?")) {
+			statement.setString(1, name);
+			statement.executeUpdate();
+		} catch(SQLException e) {
+			throw new IOException("Could not delete region " + name + " from " + file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public synchronized void rename(String from, String to) throws IOException {
+		try(PreparedStatement statement = connection.prepareStatement("UPDATE OR REPLACE regions SET name = ? WHERE name = ?")) {
+			statement.setString(1, to);
+			statement.setString(2, from);
+			statement.executeUpdate();
+		} catch(SQLException e) {
+			throw new IOException("Could not rename region " + from + " to " + to + " in " + file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public long getStamp() {
+		File wal = new File(file.getPath() + "-wal");
+		return (file.lastModified() * 31 + file.length()) * 31 + wal.lastModified() + wal.length();
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			synchronized(readLock) {
+				readConnection.close();
+			}
+			connection.close();
+		} catch(SQLException e) {
+			AreaShop.warn("Could not close database " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Set the parameters of an upsert statement.
+	 * @param statement The statement to set the parameters for
+	 * @param snapshot  The region to save
+	 * @throws SQLException when setting the parameters failed
+	 */
+	private void bind(PreparedStatement statement, RegionSnapshot snapshot) throws SQLException {
+		statement.setString(1, snapshot.getName());
+		statement.setString(2, snapshot.getType());
+		statement.setString(3, snapshot.getWorld());
+		statement.setString(4, snapshot.getData());
+	}
+}
@@ -0,0 +1,153 @@
+package me.wiefferink.areashop.storage;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores each region in its own file in the regions folder, this is the default storage.
+ */
+public class YamlRegionStore implements RegionStore {
+
+	public static final String TYPE = "yaml";
+
+	private final File folder;
+
+	/**
+	 * Constructor.
+	 * @param folder The folder containing the region files
+	 */
+	public YamlRegionStore(File folder) {
+		this.folder = folder;
+	}
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public Map<String, YamlConfiguration> loadAll(int threads) throws IOException {
+		if(!folder.exists() && !folder.mkdirs()) {
+			throw new IOException("Could not create region files directory: " + folder.getAbsolutePath());
+		}
+		File[] files = folder.listFiles();
+		if(files == null) {
+			throw new IOException("Could not list region files directory: " + folder.getAbsolutePath());
+		}
+		Map<String, RegionParser.Source> sources = new LinkedHashMap<>();
+		for(File file : files) {
+			// Skip leftovers of writes that got interrupted, the region file itself is still intact
+			if(file.isFile() && !file.getName().endsWith(".tmp")) {
+				sources.put(file.getPath(), () -> new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			}
+		}
+		return RegionParser.parseAll(sources, threads);
+	}
+
+	@Override
+	public Set<String> getNames() throws IOException {
+		File[] files = folder.listFiles();
+		if(files == null) {
+			throw new IOException("Could not list region files directory: " + folder.getAbsolutePath());
+		}
+		Set<String> result = new HashSet<>();
+		for(File file : files) {
+			if(file.isFile() && file.getName().endsWith(".yml")) {
+				result.add(file.getName().substring(0, file.getName().length() - 4));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public YamlConfiguration load(String name) throws IOException {
+		File file = getFile(name);
+		if(!file.isFile()) {
+			return null;
+		}
+		YamlConfiguration config = new YamlConfiguration();
+		try {
+			config.loadFromString(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		} catch(InvalidConfigurationException e) {
+			throw new IOException("Region file contains invalid YAML: " + file.getAbsolutePath(), e);
+		}
+		return config;
+	}
+
+	@Override
+	public void save(RegionSnapshot snapshot) throws IOException {
+		File file = getFile(snapshot.getName());
+		// Write to a temporary file first, a crash halfway should not leave a corrupt region file behind
+		File temporary = new File(folder, snapshot.getName() + ".yml.tmp");
+		Files.write(temporary.toPath(), snapshot.getData().getBytes(StandardCharsets.UTF_8));
+		move(temporary, file);
+	}
+
+	@Override
+	public void delete(String name) throws IOException {
+		File file = getFile(name);
+		if(file.exists() && !file.delete()) {
+			throw new IOException("File could not be deleted: " + file.getAbsolutePath());
+		}
+	}
+
+	@Override
+	public void rename(String from, String to) throws IOException {
+		File file = getFile(from);
+		if(file.exists()) {
+			move(file, getFile(to));
+		}
+	}
+
+	@Override
+	public long getStamp() {
+		File[] files = folder.listFiles();
+		if(files == null) {
+			return 0;
+		}
+		long newest = 0;
+		for(File file : files) {
+			newest = Math.max(newest, file.lastModified());
+		}
+		return newest * 31 + files.length;
+	}
+
+	@Override
+	public void close() {
+		// Nothing to release
+	}
+
+	/**
+	 * Get the file of a region.
+	 * @param name The lowercase name of the region
+	 * @return The file the region is stored in
+	 */
+	private File getFile(String name) {
+		return new File(folder, name + ".yml");
+	}
+
+	/**
+	 * Move a file, atomically if the file system supports it.
+	 * @param from The file to move
+	 * @param to   The target location, replaced if it exists
+	 * @throws IOException when moving failed
+	 */
+	private void move(File from, File to) throws IOException {
+		try {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
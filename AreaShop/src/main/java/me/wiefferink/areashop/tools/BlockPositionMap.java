@@ -0,0 +1,181 @@
+package me.wiefferink.areashop.tools;
+
+import org.bukkit.block.Block;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Map from block positions to values, grouped by world and chunk.
+ * Positions are stored as packed longs in primitive maps, so lookups do not need to build a string or Location or box the keys.
+ * @param <T> The type of the values
+ */
+public class BlockPositionMap<T> {
+
+	// World name -> packed chunk position -> packed block position -> value
+	private final Map<String, LongObjectMap<LongObjectMap<T>>> worlds;
+	private int size;
+
+	/**
+	 * Constructor.
+	 */
+	public BlockPositionMap() {
+		worlds = new HashMap<>();
+	}
+
+	/**
+	 * Pack a block position into a long.
+	 * Uses 26 bits for x and z and 12 bits for y, which covers the complete world.
+	 * @param x The x coordinate of the block
+	 * @param y The y coordinate of the block
+	 * @param z The z coordinate of the block
+	 * @return The packed position
+	 */
+	public static long packBlock(int x, int y, int z) {
+		return ((long)(x & 0x3FFFFFF) << 38) | ((long)(z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+	}
+
+	/**
+	 * Pack a chunk position into a long.
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @return The packed position
+	 */
+	public static long packChunk(int chunkX, int chunkZ) {
+		return ((long)chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Get the value at a position.
+	 * @param world The name of the world
+	 * @param x     The x coordinate of the block
+	 * @param y     The y coordinate of the block
+	 * @param z     The z coordinate of the block
+	 * @return The value at the position, or null if there is none
+	 */
+	public T get(String world, int x, int y, int z) {
+		LongObjectMap<LongObjectMap<T>> chunks = worlds.get(world);
+		if(chunks == null) {
+			return null;
+		}
+		LongObjectMap<T> blocks = chunks.get(packChunk(x >> 4, z >> 4));
+		if(blocks == null) {
+			return null;
+		}
+		return blocks.get(packBlock(x, y, z));
+	}
+
+	/**
+	 * Get the value at the position of a block.
+	 * @param block The block to get the value for
+	 * @return The value at the position, or null if there is none
+	 */
+	public T get(Block block) {
+		return get(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+	}
+
+	/**
+	 * Set the value at a position.
+	 * @param world The name of the world
+	 * @param x     The x coordinate of the block
+	 * @param y     The y coordinate of the block
+	 * @param z     The z coordinate of the block
+	 * @param value The value to set
+	 * @return The previous value at the position, or null if there was none
+	 */
+	public T put(String world, int x, int y, int z, T value) {
+		LongObjectMap<LongObjectMap<T>> chunks = worlds.computeIfAbsent(world, key -> new LongObjectMap<>());
+		long chunkKey = packChunk(x >> 4, z >> 4);
+		LongObjectMap<T> blocks = chunks.get(chunkKey);
+		if(blocks == null) {
+			blocks = new LongObjectMap<>();
+			chunks.put(chunkKey, blocks);
+		}
+		T previous = blocks.put(packBlock(x, y, z), value);
+		if(previous == null) {
+			size++;
+		}
+		return previous;
+	}
+
+	/**
+	 * Remove the value at a position if it is the given value.
+	 * @param world The name of the world
+	 * @param x     The x coordinate of the block
+	 * @param y     The y coordinate of the block
+	 * @param z     The z coordinate of the block
+	 * @param value The value to remove
+	 * @return true if the value has been removed, false if the position has another value or none
+	 */
+	public boolean remove(String world, int x, int y, int z, T value) {
+		LongObjectMap<LongObjectMap<T>> chunks = worlds.get(world);
+		if(chunks == null) {
+			return false;
+		}
+		long chunkKey = packChunk(x >> 4, z >> 4);
+		LongObjectMap<T> blocks = chunks.get(chunkKey);
+		if(blocks == null || !blocks.remove(packBlock(x, y, z), value)) {
+			return false;
+		}
+		size--;
+		if(blocks.isEmpty()) {
+			chunks.remove(chunkKey);
+			if(chunks.isEmpty()) {
+				worlds.remove(world);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the values in a chunk.
+	 * @param world  The name of the world
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @return The values in the chunk (unmodifiable)
+	 */
+	public Collection<T> getChunk(String world, int chunkX, int chunkZ) {
+		LongObjectMap<LongObjectMap<T>> chunks = worlds.get(world);
+		if(chunks == null) {
+			return Collections.emptyList();
+		}
+		LongObjectMap<T> blocks = chunks.get(packChunk(chunkX, chunkZ));
+		if(blocks == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableCollection(blocks.values());
+	}
+
+	/**
+	 * Remove and return the values in a chunk.
+	 * @param world  The name of the world
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @return The values that were in the chunk
+	 */
+	public Collection<T> removeChunk(String world, int chunkX, int chunkZ) {
+		LongObjectMap<LongObjectMap<T>> chunks = worlds.get(world);
+		if(chunks == null) {
+			return Collections.emptyList();
+		}
+		LongObjectMap<T> blocks = chunks.remove(packChunk(chunkX, chunkZ));
+		if(blocks == null) {
+			return Collections.emptyList();
+		}
+		if(chunks.isEmpty()) {
+			worlds.remove(world);
+		}
+		size -= blocks.size();
+		return blocks.values();
+	}
+
+	/**
+	 * Get the number of values.
+	 * @return The number of values in the map
+	 */
+	public int size() {
+		return size;
+	}
+}
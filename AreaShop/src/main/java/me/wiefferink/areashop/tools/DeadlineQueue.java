@@ -0,0 +1,144 @@
+package me.wiefferink.areashop.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps track of items that have to be handled at a certain time, ordered by that time.
+ * Rescheduling and removing items is cheap: outdated entries stay in the heap and are skipped when they come up.
+ * @param <T> The type of the items
+ */
+public class DeadlineQueue<T> {
+
+	private final PriorityQueue<Deadline<T>> queue;
+	private final Map<T, Long> deadlines;
+
+	/**
+	 * Constructor.
+	 */
+	public DeadlineQueue() {
+		queue = new PriorityQueue<>();
+		deadlines = new HashMap<>();
+	}
+
+	/**
+	 * Schedule an item, replacing the previous deadline of the item if it was already scheduled.
+	 * @param item     The item to schedule
+	 * @param deadline The time at which the item should be handled (milliseconds since epoch)
+	 */
+	public void schedule(T item, long deadline) {
+		Long previous = deadlines.put(item, deadline);
+		if(previous != null && previous == deadline) {
+			return;
+		}
+		queue.add(new Deadline<>(item, deadline));
+		// Prevent outdated entries from piling up
+		if(queue.size() > 2 * deadlines.size() + 16) {
+			queue.clear();
+			for(Map.Entry<T, Long> entry : deadlines.entrySet()) {
+				queue.add(new Deadline<>(entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Remove an item.
+	 * @param item The item to remove
+	 */
+	public void remove(T item) {
+		deadlines.remove(item);
+	}
+
+	/**
+	 * Check if an item is scheduled.
+	 * @param item The item to check
+	 * @return true if the item is scheduled, otherwise false
+	 */
+	public boolean contains(T item) {
+		return deadlines.containsKey(item);
+	}
+
+	/**
+	 * Get the deadline of an item.
+	 * @param item The item to get the deadline for
+	 * @return The deadline of the item, or null if it is not scheduled
+	 */
+	public Long getDeadline(T item) {
+		return deadlines.get(item);
+	}
+
+	/**
+	 * Remove and return all items with a deadline before the given time.
+	 * @param time The time to compare to (milliseconds since epoch)
+	 * @return The items that are due, earliest deadline first
+	 */
+	public List<T> pollDue(long time) {
+		List<T> result = new ArrayList<>();
+		while(!queue.isEmpty() && queue.peek().time < time) {
+			Deadline<T> deadline = queue.poll();
+			Long current = deadlines.get(deadline.item);
+			// Skip entries of items that have been removed or rescheduled
+			if(current != null && current == deadline.time) {
+				deadlines.remove(deadline.item);
+				result.add(deadline.item);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the items with the earliest deadlines without removing them.
+	 * @param count The maximum number of items to return
+	 * @return The items, earliest deadline first
+	 */
+	public List<T> getFirst(int count) {
+		List<T> result = new ArrayList<>();
+		PriorityQueue<Deadline<T>> copy = new PriorityQueue<>(queue);
+		while(!copy.isEmpty() && result.size() < count) {
+			Deadline<T> deadline = copy.poll();
+			Long current = deadlines.get(deadline.item);
+			if(current != null && current == deadline.time) {
+				result.add(deadline.item);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of scheduled items.
+	 * @return The number of items
+	 */
+	public int size() {
+		return deadlines.size();
+	}
+
+	/**
+	 * Remove all items.
+	 */
+	public void clear() {
+		queue.clear();
+		deadlines.clear();
+	}
+
+	/**
+	 * Entry in the heap.
+	 * @param <T> The type of the item
+	 */
+	private static class Deadline<T> implements Comparable<Deadline<T>> {
+		private final T item;
+		private final long time;
+
+		private Deadline(T item, long time) {
+			this.item = item;
+			this.time = time;
+		}
+
+		@Override
+		public int compareTo(Deadline<T> other) {
+			return Long.compare(time, other.time);
+		}
+	}
+}
@@ -0,0 +1,411 @@
+package me.wiefferink.areashop.tools;
+
+import me.wiefferink.interactivemessenger.processing.ReplacementProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arithmetic expression that is parsed once and can then be evaluated quickly for different regions.
+ * Supports numbers, variables (%volume%, %width%, etc.), the operators + - * / %, comparisons, &amp;&amp;, ||, !,
+ * the ternary operator and common math functions (with or without the 'Math.' prefix used by JavaScript).
+ */
+public class Expression {
+
+	private final String input;
+	private final Node root;
+
+	/**
+	 * Constructor.
+	 * @param input The source of the expression
+	 * @param root  The parsed expression
+	 */
+	private Expression(String input, Node root) {
+		this.input = input;
+		this.root = root;
+	}
+
+	/**
+	 * Parse an expression.
+	 * @param input The expression to parse
+	 * @return The parsed expression
+	 * @throws ExpressionException when the input is not a supported expression
+	 */
+	public static Expression compile(String input) throws ExpressionException {
+		if(input == null || input.trim().isEmpty()) {
+			throw new ExpressionException("empty expression");
+		}
+		Parser parser = new Parser(input);
+		Node root = parser.parseExpression();
+		parser.skipWhitespace();
+		if(parser.position < input.length()) {
+			throw new ExpressionException("unexpected '" + input.charAt(parser.position) + "' at position " + (parser.position + 1));
+		}
+		return new Expression(input, root);
+	}
+
+	/**
+	 * Evaluate the expression.
+	 * @param variables The provider of the values of the variables, for example a region
+	 * @return The result
+	 * @throws ExpressionException when a variable does not have a numeric value
+	 */
+	public double evaluate(ReplacementProvider variables) throws ExpressionException {
+		return root.evaluate(variables);
+	}
+
+	/**
+	 * Get the source of the expression.
+	 * @return The expression as it has been compiled
+	 */
+	public String getInput() {
+		return input;
+	}
+
+	/**
+	 * Indicates that an expression could not be parsed or evaluated.
+	 */
+	public static class ExpressionException extends Exception {
+		public ExpressionException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Part of a parsed expression.
+	 */
+	private interface Node {
+		double evaluate(ReplacementProvider variables) throws ExpressionException;
+	}
+
+	/**
+	 * Operation with two operands.
+	 */
+	private interface BinaryOperator {
+		double apply(double left, double right);
+	}
+
+	/**
+	 * Math function with a fixed number of arguments.
+	 */
+	private interface MathFunction {
+		double apply(double[] arguments);
+	}
+
+	/**
+	 * Recursive descent parser, each method parses one level of operator precedence.
+	 */
+	private static class Parser {
+		private final String input;
+		private int position;
+
+		private Parser(String input) {
+			this.input = input;
+			this.position = 0;
+		}
+
+		private Node parseExpression() throws ExpressionException {
+			Node condition = parseOr();
+			if(consume("?")) {
+				Node whenTrue = parseExpression();
+				expect(":");
+				Node whenFalse = parseExpression();
+				return variables -> condition.evaluate(variables) != 0 ? whenTrue.evaluate(variables) : whenFalse.evaluate(variables);
+			}
+			return condition;
+		}
+
+		private Node parseOr() throws ExpressionException {
+			Node result = parseAnd();
+			while(consume("||")) {
+				Node left = result;
+				Node right = parseAnd();
+				result = variables -> left.evaluate(variables) != 0 || right.evaluate(variables) != 0 ? 1 : 0;
+			}
+			return result;
+		}
+
+		private Node parseAnd() throws ExpressionException {
+			Node result = parseEquality();
+			while(consume("&&")) {
+				Node left = result;
+				Node right = parseEquality();
+				result = variables -> left.evaluate(variables) != 0 && right.evaluate(variables) != 0 ? 1 : 0;
+			}
+			return result;
+		}
+
+		private Node parseEquality() throws ExpressionException {
+			Node result = parseComparison();
+			while(true) {
+				if(consume("===") || consume("==")) {
+					result = binary(result, parseComparison(), (left, right) -> left == right ? 1 : 0);
+				} else if(consume("!==") || consume("!=")) {
+					result = binary(result, parseComparison(), (left, right) -> left != right ? 1 : 0);
+				} else {
+					return result;
+				}
+			}
+		}
+
+		private Node parseComparison() throws ExpressionException {
+			Node result = parseAdditive();
+			while(true) {
+				if(consume("<=")) {
+					result = binary(result, parseAdditive(), (left, right) -> left <= right ? 1 : 0);
+				} else if(consume(">=")) {
+					result = binary(result, parseAdditive(), (left, right) -> left >= right ? 1 : 0);
+				} else if(consume("<")) {
+					result = binary(result, parseAdditive(), (left, right) -> left < right ? 1 : 0);
+				} else if(consume(">")) {
+					result = binary(result, parseAdditive(), (left, right) -> left > right ? 1 : 0);
+				} else {
+					return result;
+				}
+			}
+		}
+
+		private Node parseAdditive() throws ExpressionException {
+			Node result = parseMultiplicative();
+			while(true) {
+				if(consume("+")) {
+					result = binary(result, parseMultiplicative(), (left, right) -> left + right);
+				} else if(consume("-")) {
+					result = binary(result, parseMultiplicative(), (left, right) -> left - right);
+				} else {
+					return result;
+				}
+			}
+		}
+
+		private Node parseMultiplicative() throws ExpressionException {
+			Node result = parseUnary();
+			while(true) {
+				if(consume("*")) {
+					result = binary(result, parseUnary(), (left, right) -> left * right);
+				} else if(consume("/")) {
+					result = binary(result, parseUnary(), (left, right) -> left / right);
+				} else if(consume("%")) {
+					result = binary(result, parseUnary(), (left, right) -> left % right);
+				} else {
+					return result;
+				}
+			}
+		}
+
+		private Node parseUnary() throws ExpressionException {
+			if(consume("-")) {
+				Node operand = parseUnary();
+				return variables -> -operand.evaluate(variables);
+			} else if(consume("+")) {
+				return parseUnary();
+			} else if(peek() == '!' && !input.startsWith("!=", position)) {
+				position++;
+				Node operand = parseUnary();
+				return variables -> operand.evaluate(variables) == 0 ? 1 : 0;
+			}
+			return parsePrimary();
+		}
+
+		private Node parsePrimary() throws ExpressionException {
+			skipWhitespace();
+			char current = peek();
+			if(current == '(') {
+				position++;
+				Node result = parseExpression();
+				expect(")");
+				return result;
+			} else if(current == '%') {
+				return parseVariable();
+			} else if(Character.isDigit(current) || current == '.') {
+				return parseNumber();
+			} else if(Character.isLetter(current)) {
+				return parseIdentifier();
+			} else if(current == 0) {
+				throw new ExpressionException("unexpected end of the expression");
+			}
+			throw new ExpressionException("unexpected '" + current + "' at position " + (position + 1));
+		}
+
+		private Node parseVariable() throws ExpressionException {
+			int end = input.indexOf('%', position + 1);
+			if(end < 0) {
+				throw new ExpressionException("variable at position " + (position + 1) + " is not closed");
+			}
+			String name = input.substring(position + 1, end);
+			if(name.isEmpty()) {
+				throw new ExpressionException("empty variable at position " + (position + 1));
+			}
+			position = end + 1;
+			return variables -> {
+				Object value = variables.provideReplacement(name);
+				if(value instanceof Number) {
+					return ((Number)value).doubleValue();
+				}
+				if(value != null) {
+					try {
+						return Double.parseDouble(value.toString());
+					} catch(NumberFormatException e) {
+						// Handled below
+					}
+				}
+				throw new ExpressionException("variable %" + name + "% is not a number: " + value);
+			};
+		}
+
+		private Node parseNumber() throws ExpressionException {
+			int start = position;
+			while(position < input.length() && (Character.isDigit(input.charAt(position)) || input.charAt(position) == '.')) {
+				position++;
+			}
+			// Exponent, like 1e6
+			if(position < input.length() && (input.charAt(position) == 'e' || input.charAt(position) == 'E')) {
+				int exponentStart = position;
+				position++;
+				if(position < input.length() && (input.charAt(position) == '+' || input.charAt(position) == '-')) {
+					position++;
+				}
+				if(position < input.length() && Character.isDigit(input.charAt(position))) {
+					while(position < input.length() && Character.isDigit(input.charAt(position))) {
+						position++;
+					}
+				} else {
+					position = exponentStart;
+				}
+			}
+			String number = input.substring(start, position);
+			double value;
+			try {
+				value = Double.parseDouble(number);
+			} catch(NumberFormatException e) {
+				throw new ExpressionException("invalid number '" + number + "' at position " + (start + 1));
+			}
+			return variables -> value;
+		}
+
+		private Node parseIdentifier() throws ExpressionException {
+			int start = position;
+			while(position < input.length() && (Character.isLetterOrDigit(input.charAt(position)) || input.charAt(position) == '.')) {
+				position++;
+			}
+			String identifier = input.substring(start, position);
+			String name = identifier.startsWith("Math.") ? identifier.substring(5) : identifier;
+			if(name.equals("PI")) {
+				return variables -> Math.PI;
+			} else if(name.equals("E")) {
+				return variables -> Math.E;
+			}
+
+			if(!consume("(")) {
+				throw new ExpressionException("unknown identifier '" + identifier + "' at position " + (start + 1));
+			}
+			List<Node> arguments = new ArrayList<>();
+			if(!consume(")")) {
+				do {
+					arguments.add(parseExpression());
+				} while(consume(","));
+				expect(")");
+			}
+
+			MathFunction function;
+			int count = arguments.size();
+			switch(name) {
+				case "abs":
+					function = args -> Math.abs(args[0]);
+					break;
+				case "ceil":
+					function = args -> Math.ceil(args[0]);
+					break;
+				case "floor":
+					function = args -> Math.floor(args[0]);
+					break;
+				case "round":
+					// JavaScript rounds halves up, which matches Math.floor(x + 0.5)
+					function = args -> Math.floor(args[0] + 0.5);
+					break;
+				case "sqrt":
+					function = args -> Math.sqrt(args[0]);
+					break;
+				case "cbrt":
+					function = args -> Math.cbrt(args[0]);
+					break;
+				case "exp":
+					function = args -> Math.exp(args[0]);
+					break;
+				case "log":
+					function = args -> Math.log(args[0]);
+					break;
+				case "log10":
+					function = args -> Math.log10(args[0]);
+					break;
+				case "sign":
+					function = args -> Math.signum(args[0]);
+					break;
+				case "pow":
+					if(count != 2) {
+						throw new ExpressionException(identifier + "() requires 2 arguments");
+					}
+					function = args -> Math.pow(args[0], args[1]);
+					break;
+				case "min":
+				case "max":
+					if(count == 0) {
+						throw new ExpressionException(identifier + "() requires at least 1 argument");
+					}
+					boolean max = name.equals("max");
+					function = args -> {
+						double result = args[0];
+						for(int i = 1; i < args.length; i++) {
+							result = max ? Math.max(result, args[i]) : Math.min(result, args[i]);
+						}
+						return result;
+					};
+					break;
+				default:
+					throw new ExpressionException("unknown function '" + identifier + "' at position " + (start + 1));
+			}
+			if(!name.equals("pow") && !name.equals("min") && !name.equals("max") && count != 1) {
+				throw new ExpressionException(identifier + "() requires 1 argument");
+			}
+
+			Node[] argumentNodes = arguments.toArray(new Node[count]);
+			return variables -> {
+				double[] values = new double[argumentNodes.length];
+				for(int i = 0; i < argumentNodes.length; i++) {
+					values[i] = argumentNodes[i].evaluate(variables);
+				}
+				return function.apply(values);
+			};
+		}
+
+		private Node binary(Node left, Node right, BinaryOperator operator) {
+			return variables -> operator.apply(left.evaluate(variables), right.evaluate(variables));
+		}
+
+		private boolean consume(String token) {
+			skipWhitespace();
+			if(input.startsWith(token, position)) {
+				position += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String token) throws ExpressionException {
+			if(!consume(token)) {
+				throw new ExpressionException("expected '" + token + "' at position " + (position + 1));
+			}
+		}
+
+		private char peek() {
+			skipWhitespace();
+			return position < input.length() ? input.charAt(position) : 0;
+		}
+
+		private void skipWhitespace() {
+			while(position < input.length() && Character.isWhitespace(input.charAt(position))) {
+				position++;
+			}
+		}
+	}
+}
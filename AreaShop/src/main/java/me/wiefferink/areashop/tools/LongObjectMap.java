@@ -0,0 +1,198 @@
+package me.wiefferink.areashop.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hash map from primitive long keys to values, using open addressing so that keys are never boxed.
+ * Null values are not supported, a null value marks a free slot.
+ * @param <T> The type of the values
+ */
+public class LongObjectMap<T> {
+
+	private static final int MINIMUM_CAPACITY = 8;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+
+	/**
+	 * Constructor.
+	 */
+	public LongObjectMap() {
+		keys = new long[MINIMUM_CAPACITY];
+		values = new Object[MINIMUM_CAPACITY];
+	}
+
+	/**
+	 * Get the value of a key.
+	 * @param key The key to get the value for
+	 * @return The value of the key, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (T)values[index];
+	}
+
+	/**
+	 * Set the value of a key.
+	 * @param key   The key to set the value for
+	 * @param value The value to set, not null
+	 * @return The previous value of the key, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public T put(long key, T value) {
+		if(value == null) {
+			throw new IllegalArgumentException("LongObjectMap does not support null values");
+		}
+		int mask = keys.length - 1;
+		int index = slot(key);
+		while(values[index] != null) {
+			if(keys[index] == key) {
+				T previous = (T)values[index];
+				values[index] = value;
+				return previous;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		size++;
+		// Keep the load factor at most 0.5, linear probing gets slow when the table fills up
+		if(size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the value of a key.
+	 * @param key The key to remove
+	 * @return The value that has been removed, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public T remove(long key) {
+		int index = indexOf(key);
+		if(index < 0) {
+			return null;
+		}
+		T previous = (T)values[index];
+		removeAt(index);
+		return previous;
+	}
+
+	/**
+	 * Remove the value of a key if it is the given value.
+	 * @param key   The key to remove
+	 * @param value The value to remove
+	 * @return true if the value has been removed, false if the key has another value or none
+	 */
+	public boolean remove(long key, T value) {
+		int index = indexOf(key);
+		if(index < 0 || !Objects.equals(values[index], value)) {
+			return false;
+		}
+		removeAt(index);
+		return true;
+	}
+
+	/**
+	 * Get a copy of the values.
+	 * @return The values in no particular order
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> values() {
+		List<T> result = new ArrayList<>(size);
+		for(Object value : values) {
+			if(value != null) {
+				result.add((T)value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of values.
+	 * @return The number of values in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if the map has no values.
+	 * @return true if the map is empty, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Get the slot a key would like to be stored in.
+	 * @param key The key
+	 * @return The index of the slot
+	 */
+	private int slot(long key) {
+		// Spread the bits, packed positions differ mostly in the low bits of each coordinate
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & (keys.length - 1);
+	}
+
+	/**
+	 * Find the slot of a key.
+	 * @param key The key to find
+	 * @return The index of the slot, or -1 if the key is not in the map
+	 */
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		for(int index = slot(key); values[index] != null; index = (index + 1) & mask) {
+			if(keys[index] == key) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Remove the entry in a slot, and move later entries back so that lookups still find them.
+	 * @param index The index of the slot to clear
+	 */
+	private void removeAt(int index) {
+		int mask = keys.length - 1;
+		int free = index;
+		for(int current = (index + 1) & mask; values[current] != null; current = (current + 1) & mask) {
+			// The entry can move to the free slot if that is between its desired slot and its current slot
+			if(((current - slot(keys[current])) & mask) >= ((current - free) & mask)) {
+				keys[free] = keys[current];
+				values[free] = values[current];
+				free = current;
+			}
+		}
+		values[free] = null;
+		size--;
+	}
+
+	/**
+	 * Move all entries to a table with a different capacity.
+	 * @param capacity The new capacity, a power of two
+	 */
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for(int i = 0; i < oldValues.length; i++) {
+			if(oldValues[i] != null) {
+				int index = slot(oldKeys[i]);
+				while(values[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package me.wiefferink.areashop.tools;
+
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import com.sk89q.worldguard.protection.regions.RegionType;
+import me.wiefferink.areashop.regions.GeneralRegion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the bounding boxes of AreaShop regions, to find regions by location or area without checking all regions.
+ * Each world is divided in columns of 64x64 blocks, regions are listed in all columns they overlap with.
+ * Very large regions are kept in a separate list per world instead, to keep the number of column entries low.
+ */
+public class RegionSpatialIndex {
+
+	// Size of a column is 1 << CELL_SHIFT blocks
+	private static final int CELL_SHIFT = 6;
+	// Regions that overlap with more columns than this are stored as large region
+	private static final int MAX_CELLS = 256;
+
+	private final Map<String, WorldIndex> worlds;
+	private final Map<GeneralRegion, Entry> entries;
+
+	/**
+	 * Constructor.
+	 */
+	public RegionSpatialIndex() {
+		worlds = new HashMap<>();
+		entries = new HashMap<>();
+	}
+
+	/**
+	 * Add a region to the index, or update it if it is already indexed.
+	 * Regions of which the WorldGuard region does not exist are not indexed.
+	 * @param region The region to add
+	 */
+	public void add(GeneralRegion region) {
+		remove(region);
+		ProtectedRegion protectedRegion = region.getRegion();
+		if(protectedRegion == null || region.getWorldName() == null) {
+			return;
+		}
+		Entry entry = new Entry(region, protectedRegion, region.getWorldName());
+		entries.put(region, entry);
+		WorldIndex worldIndex = worlds.computeIfAbsent(entry.world, key -> new WorldIndex());
+		worldIndex.all.add(entry);
+		if(entry.getCellCount() > MAX_CELLS) {
+			worldIndex.large.add(entry);
+		} else {
+			for(int cellX = entry.minX >> CELL_SHIFT; cellX <= entry.maxX >> CELL_SHIFT; cellX++) {
+				for(int cellZ = entry.minZ >> CELL_SHIFT; cellZ <= entry.maxZ >> CELL_SHIFT; cellZ++) {
+					worldIndex.cells.computeIfAbsent(packCell(cellX, cellZ), key -> new ArrayList<>()).add(entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove a region from the index.
+	 * @param region The region to remove
+	 */
+	public void remove(GeneralRegion region) {
+		Entry entry = entries.remove(region);
+		if(entry == null) {
+			return;
+		}
+		WorldIndex worldIndex = worlds.get(entry.world);
+		if(worldIndex == null) {
+			return;
+		}
+		worldIndex.all.remove(entry);
+		if(!worldIndex.large.remove(entry)) {
+			for(int cellX = entry.minX >> CELL_SHIFT; cellX <= entry.maxX >> CELL_SHIFT; cellX++) {
+				for(int cellZ = entry.minZ >> CELL_SHIFT; cellZ <= entry.maxZ >> CELL_SHIFT; cellZ++) {
+					long cellKey = packCell(cellX, cellZ);
+					List<Entry> cell = worldIndex.cells.get(cellKey);
+					if(cell != null && cell.remove(entry) && cell.isEmpty()) {
+						worldIndex.cells.remove(cellKey);
+					}
+				}
+			}
+		}
+		if(worldIndex.all.isEmpty()) {
+			worlds.remove(entry.world);
+		}
+	}
+
+	/**
+	 * Update a region in the index if its WorldGuard region has been redefined or replaced.
+	 * @param region The region to update
+	 * @return true if the index has been changed, otherwise false
+	 */
+	public boolean update(GeneralRegion region) {
+		Entry entry = entries.get(region);
+		ProtectedRegion protectedRegion = region.getRegion();
+		if(entry == null && protectedRegion == null) {
+			return false;
+		}
+		if(entry != null && entry.protectedRegion == protectedRegion && entry.hasBoundsOf(protectedRegion) && entry.world.equals(region.getWorldName())) {
+			return false;
+		}
+		add(region);
+		return true;
+	}
+
+	/**
+	 * Remove all regions of a world from the index.
+	 * @param world The name of the world
+	 */
+	public void removeWorld(String world) {
+		WorldIndex worldIndex = worlds.remove(world);
+		if(worldIndex == null) {
+			return;
+		}
+		for(Entry entry : worldIndex.all) {
+			entries.remove(entry.region);
+		}
+	}
+
+	/**
+	 * Remove all regions from the index.
+	 */
+	public void clear() {
+		worlds.clear();
+		entries.clear();
+	}
+
+	/**
+	 * Get the regions that contain a block, polygon regions are checked exactly.
+	 * @param world The name of the world
+	 * @param x     The x coordinate of the block
+	 * @param y     The y coordinate of the block
+	 * @param z     The z coordinate of the block
+	 * @return The regions containing the block
+	 */
+	public List<GeneralRegion> getRegions(String world, int x, int y, int z) {
+		WorldIndex worldIndex = worlds.get(world);
+		if(worldIndex == null) {
+			return new ArrayList<>();
+		}
+		List<GeneralRegion> result = new ArrayList<>();
+		List<Entry> cell = worldIndex.cells.get(packCell(x >> CELL_SHIFT, z >> CELL_SHIFT));
+		if(cell != null) {
+			for(Entry entry : cell) {
+				if(entry.contains(x, y, z)) {
+					result.add(entry.region);
+				}
+			}
+		}
+		for(Entry entry : worldIndex.large) {
+			if(entry.contains(x, y, z)) {
+				result.add(entry.region);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the regions of which the bounding box overlaps with an area.
+	 * @param world The name of the world
+	 * @param minX  The minimum x coordinate of the area
+	 * @param minY  The minimum y coordinate of the area
+	 * @param minZ  The minimum z coordinate of the area
+	 * @param maxX  The maximum x coordinate of the area
+	 * @param maxY  The maximum y coordinate of the area
+	 * @param maxZ  The maximum z coordinate of the area
+	 * @return The regions overlapping with the area
+	 */
+	public List<GeneralRegion> getRegions(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		WorldIndex worldIndex = worlds.get(world);
+		if(worldIndex == null) {
+			return new ArrayList<>();
+		}
+		List<GeneralRegion> result = new ArrayList<>();
+		long cellCount = ((long)(maxX >> CELL_SHIFT) - (minX >> CELL_SHIFT) + 1) * ((long)(maxZ >> CELL_SHIFT) - (minZ >> CELL_SHIFT) + 1);
+		if(cellCount > worldIndex.cells.size()) {
+			// Area is larger than the indexed part of the world, checking all regions is faster
+			for(Entry entry : worldIndex.all) {
+				if(entry.overlaps(minX, minY, minZ, maxX, maxY, maxZ)) {
+					result.add(entry.region);
+				}
+			}
+			return result;
+		}
+
+		// Regions can be listed in multiple columns
+		Set<Entry> found = new HashSet<>();
+		for(int cellX = minX >> CELL_SHIFT; cellX <= maxX >> CELL_SHIFT; cellX++) {
+			for(int cellZ = minZ >> CELL_SHIFT; cellZ <= maxZ >> CELL_SHIFT; cellZ++) {
+				List<Entry> cell = worldIndex.cells.get(packCell(cellX, cellZ));
+				if(cell == null) {
+					continue;
+				}
+				for(Entry entry : cell) {
+					if(entry.overlaps(minX, minY, minZ, maxX, maxY, maxZ) && found.add(entry)) {
+						result.add(entry.region);
+					}
+				}
+			}
+		}
+		for(Entry entry : worldIndex.large) {
+			if(entry.overlaps(minX, minY, minZ, maxX, maxY, maxZ)) {
+				result.add(entry.region);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of indexed regions in a world.
+	 * @param world The name of the world
+	 * @return The number of regions in the world
+	 */
+	public int size(String world) {
+		WorldIndex worldIndex = worlds.get(world);
+		return worldIndex == null ? 0 : worldIndex.all.size();
+	}
+
+	/**
+	 * Get the number of indexed regions.
+	 * @return The number of regions
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Pack the position of a column into a long.
+	 * @param cellX The x coordinate of the column
+	 * @param cellZ The z coordinate of the column
+	 * @return The packed position
+	 */
+	private static long packCell(int cellX, int cellZ) {
+		return ((long)cellX << 32) | (cellZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Index of a single world.
+	 */
+	private static class WorldIndex {
+		private final Map<Long, List<Entry>> cells = new HashMap<>();
+		private final List<Entry> large = new ArrayList<>();
+		private final Set<Entry> all = new HashSet<>();
+	}
+
+	/**
+	 * Bounding box of a region as it has been indexed.
+	 */
+	private static class Entry {
+		private final GeneralRegion region;
+		private final ProtectedRegion protectedRegion;
+		private final String world;
+		private final int minX;
+		private final int minY;
+		private final int minZ;
+		private final int maxX;
+		private final int maxY;
+		private final int maxZ;
+		private final boolean cuboid;
+
+		private Entry(GeneralRegion region, ProtectedRegion protectedRegion, String world) {
+			this.region = region;
+			this.protectedRegion = protectedRegion;
+			this.world = world;
+			BlockVector min = protectedRegion.getMinimumPoint();
+			BlockVector max = protectedRegion.getMaximumPoint();
+			minX = min.getBlockX();
+			minY = min.getBlockY();
+			minZ = min.getBlockZ();
+			maxX = max.getBlockX();
+			maxY = max.getBlockY();
+			maxZ = max.getBlockZ();
+			cuboid = protectedRegion.getType() == RegionType.CUBOID;
+		}
+
+		private long getCellCount() {
+			return ((long)(maxX >> CELL_SHIFT) - (minX >> CELL_SHIFT) + 1) * ((long)(maxZ >> CELL_SHIFT) - (minZ >> CELL_SHIFT) + 1);
+		}
+
+		private boolean hasBoundsOf(ProtectedRegion other) {
+			BlockVector min = other.getMinimumPoint();
+			BlockVector max = other.getMaximumPoint();
+			return min.getBlockX() == minX && min.getBlockY() == minY && min.getBlockZ() == minZ
+					&& max.getBlockX() == maxX && max.getBlockY() == maxY && max.getBlockZ() == maxZ;
+		}
+
+		private boolean contains(int x, int y, int z) {
+			if(x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+				return false;
+			}
+			// Polygon regions do not fill their bounding box
+			return cuboid || protectedRegion.contains(x, y, z);
+		}
+
+		private boolean overlaps(int otherMinX, int otherMinY, int otherMinZ, int otherMaxX, int otherMaxY, int otherMaxZ) {
+			return minX <= otherMaxX && maxX >= otherMinX
+					&& minY <= otherMaxY && maxY >= otherMinY
+					&& minZ <= otherMaxZ && maxZ >= otherMinZ;
+		}
+	}
+}
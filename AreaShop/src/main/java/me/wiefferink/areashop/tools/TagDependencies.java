@@ -0,0 +1,104 @@
+package me.wiefferink.areashop.tools;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.interactivemessenger.processing.Message;
+import me.wiefferink.interactivemessenger.processing.ReplacementProvider;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps track of the replacement tags that the settings of sign and flag profiles depend on.
+ * The tags are found by rendering a setting once while recording the tags that are requested, this includes tags used by language messages.
+ * Results are cached per configuration section until the group or default settings change.
+ */
+public class TagDependencies {
+
+	// Tags of which the value changes because time passes, these are considered changed at each update
+	private static final Set<String> timeDependentTags = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			AreaShop.tagTimeLeft,
+			AreaShop.tagMoneyBackAmount,
+			AreaShop.tagRawMoneyBackAmount,
+			AreaShop.tagDateTime,
+			AreaShop.tagDateTimeShort,
+			AreaShop.tagYear,
+			AreaShop.tagMonth,
+			AreaShop.tagDay,
+			AreaShop.tagHour,
+			AreaShop.tagMinute,
+			AreaShop.tagSecond,
+			AreaShop.tagMillisecond,
+			AreaShop.tagEpoch
+	)));
+
+	private static final Map<ConfigurationSection, Map<String, Set<String>>> cache = new WeakHashMap<>();
+	private static long cacheVersion = -1;
+
+	private TagDependencies() {
+	}
+
+	/**
+	 * Get the tags of which the value changes because time passes.
+	 * @return The time dependent tags (unmodifiable)
+	 */
+	public static Set<String> getTimeDependentTags() {
+		return timeDependentTags;
+	}
+
+	/**
+	 * Get the tags that a setting of a profile depends on.
+	 * @param section  The section of the profile that contains the setting
+	 * @param key      The key of the setting in the section
+	 * @param provider Provider of the replacements, used to render the setting once (for example a region)
+	 * @return The names of the tags that are used by the setting (unmodifiable)
+	 */
+	public static Set<String> get(ConfigurationSection section, String key, ReplacementProvider provider) {
+		long version = AreaShop.getInstance().getFileManager().getSettingsVersion();
+		if(version != cacheVersion) {
+			cache.clear();
+			cacheVersion = version;
+		}
+		Map<String, Set<String>> sectionTags = cache.computeIfAbsent(section, k -> new HashMap<>());
+		Set<String> result = sectionTags.get(key);
+		if(result == null) {
+			Set<String> found = new HashSet<>();
+			String value = section.getString(key);
+			if(value != null && !value.isEmpty()) {
+				Message.fromString(value).replacements(new ReplacementProvider() {
+					@Override
+					public Object provideReplacement(String variable) {
+						found.add(variable);
+						return provider.provideReplacement(variable);
+					}
+				}).getPlain();
+			}
+			result = Collections.unmodifiableSet(found);
+			sectionTags.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Check if a setting is affected by a change.
+	 * @param dependencies The tags the setting depends on
+	 * @param changedTags  The tags that changed, null if everything changed
+	 * @return true if the setting should be applied again, otherwise false
+	 */
+	public static boolean isAffected(Set<String> dependencies, Set<String> changedTags) {
+		if(changedTags == null) {
+			return true;
+		}
+		for(String tag : dependencies) {
+			if(changedTags.contains(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,7 +1,6 @@
 package me.wiefferink.areashop.tools;
 
 import com.sk89q.worldedit.BlockVector;
-import com.sk89q.worldedit.bukkit.selections.CuboidSelection;
 import com.sk89q.worldedit.bukkit.selections.Selection;
 import com.sk89q.worldguard.protection.managers.RegionManager;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
@@ -31,8 +30,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -52,6 +53,8 @@ public class Utils {
 	private static Set<String> months;
 	private static Set<String> years;
 	private static ScriptEngine scriptEngine;
+	// Compiled expressions by their source, null for expressions that are not supported
+	private static Map<String, Expression> expressions = new HashMap<>();
 
 	/**
 	 * Initialize the utilities class with constants.
@@ -272,6 +275,36 @@ public class Utils {
 		return Message.fromKey("timeleft-years").replacements(timeLeft).getPlain();
 	}
 
+	// Units used by millisToHumanFormat() with the maximum value that is displayed in that unit
+	private static final long[] humanFormatUnits = {1000L, 60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L, 30 * 24 * 60 * 60 * 1000L, 12 * 30 * 24 * 60 * 60 * 1000L};
+	private static final long[] humanFormatLimits = {120, 120, 48, 60, 24, Long.MAX_VALUE};
+
+	/**
+	 * Get the time until the result of millisToHumanFormat() changes, for a duration that is counting down.
+	 * @param milliseconds The current duration
+	 * @return The number of milliseconds after which the duration is formatted differently, or Long.MAX_VALUE if it never changes anymore
+	 */
+	public static long millisUntilHumanFormatChange(long milliseconds) {
+		long time = milliseconds + 500;
+		if(time < 1000) {
+			// Ended, stays the same
+			return Long.MAX_VALUE;
+		}
+		for(int i = 0; i < humanFormatUnits.length; i++) {
+			long value = time / humanFormatUnits[i];
+			if(value <= humanFormatLimits[i]) {
+				// Changes when the displayed value decreases
+				long result = time - value * humanFormatUnits[i] + 1;
+				if(i > 0) {
+					// Or when the smaller unit will be used
+					result = Math.min(result, time - (humanFormatLimits[i - 1] + 1) * humanFormatUnits[i - 1] + 1);
+				}
+				return result;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
 	private static final BlockFace[] facings = {BlockFace.NORTH, BlockFace.NORTH_EAST, BlockFace.EAST, BlockFace.SOUTH_EAST, BlockFace.SOUTH, BlockFace.SOUTH_WEST, BlockFace.WEST, BlockFace.NORTH_WEST};
 
 	/**
@@ -293,14 +326,7 @@ public class Utils {
 	 * @return A list with all the AreaShop regions intersecting with the selection
 	 */
 	public static List<GeneralRegion> getRegionsInSelection(Selection selection) {
-		ArrayList<GeneralRegion> result = new ArrayList<>();
-		for(ProtectedRegion region : getWorldEditRegionsInSelection(selection)) {
-			GeneralRegion asRegion = AreaShop.getInstance().getFileManager().getRegion(region.getId());
-			if(asRegion != null) {
-				result.add(asRegion);
-			}
-		}
-		return result;
+		return AreaShop.getInstance().getFileManager().getRegionsIn(selection.getWorld(), selection.getMinimumPoint(), selection.getMaximumPoint());
 	}
 
 	/**
@@ -309,12 +335,12 @@ public class Utils {
 	 * @return A list with all the AreaShop regions that contain the location
 	 */
 	public static List<GeneralRegion> getRegions(Location location) {
-		Selection selection = new CuboidSelection(location.getWorld(), location, location);
-		return getRegionsInSelection(selection);
+		return AreaShop.getInstance().getFileManager().getRegionsAt(location);
 	}
 
 	/**
 	 * Get all WorldGuard regions intersecting with a WorldEdit selection.
+	 * This checks all WorldGuard regions of the world, use getRegionsInSelection() to only get AreaShop regions.
 	 * @param selection The selection to check
 	 * @return A list with all the WorldGuard regions intersecting with the selection
 	 */
@@ -328,24 +354,10 @@ public class Utils {
 		for(ProtectedRegion region : regionManager.getRegions().values()) {
 			BlockVector regionMin = region.getMinimumPoint();
 			BlockVector regionMax = region.getMaximumPoint();
-			if(
-					(      // x part, resolves to true if the selection and region overlap anywhere on the x-axis
-							(regionMin.getBlockX() <= selectionMax.getBlockX() && regionMin.getBlockX() >= selectionMin.getBlockX())
-									|| (regionMax.getBlockX() <= selectionMax.getBlockX() && regionMax.getBlockX() >= selectionMin.getBlockX())
-									|| (selectionMin.getBlockX() >= regionMin.getBlockX() && selectionMin.getBlockX() <= regionMax.getBlockX())
-									|| (selectionMax.getBlockX() >= regionMin.getBlockX() && selectionMax.getBlockX() <= regionMax.getBlockX())
-					) && ( // Y part, resolves to true if the selection and region overlap anywhere on the y-axis
-							(regionMin.getBlockY() <= selectionMax.getBlockY() && regionMin.getBlockY() >= selectionMin.getBlockY())
-									|| (regionMax.getBlockY() <= selectionMax.getBlockY() && regionMax.getBlockY() >= selectionMin.getBlockY())
-									|| (selectionMin.getBlockY() >= regionMin.getBlockY() && selectionMin.getBlockY() <= regionMax.getBlockY())
-									|| (selectionMax.getBlockY() >= regionMin.getBlockY() && selectionMax.getBlockY() <= regionMax.getBlockY())
-					) && ( // Z part, resolves to true if the selection and region overlap anywhere on the z-axis
-							(regionMin.getBlockZ() <= selectionMax.getBlockZ() && regionMin.getBlockZ() >= selectionMin.getBlockZ())
-									|| (regionMax.getBlockZ() <= selectionMax.getBlockZ() && regionMax.getBlockZ() >= selectionMin.getBlockZ())
-									|| (selectionMin.getBlockZ() >= regionMin.getBlockZ() && selectionMin.getBlockZ() <= regionMax.getBlockZ())
-									|| (selectionMax.getBlockZ() >= regionMin.getBlockZ() && selectionMax.getBlockZ() <= regionMax.getBlockZ())
-					)
-			) {
+			// The selection and region overlap if they overlap on each axis
+			if(regionMin.getBlockX() <= selectionMax.getBlockX() && regionMax.getBlockX() >= selectionMin.getBlockX()
+					&& regionMin.getBlockY() <= selectionMax.getBlockY() && regionMax.getBlockY() >= selectionMin.getBlockY()
+					&& regionMin.getBlockZ() <= selectionMax.getBlockZ() && regionMax.getBlockZ() >= selectionMin.getBlockZ()) {
 				result.add(region);
 			}
 		}
@@ -720,12 +732,48 @@ public class Utils {
 
 	/**
 	 * Evaluate string input to a number.
-	 * Uses JavaScript for expressions.
+	 * Expressions are compiled once and cached, JavaScript is only used for unsupported expressions if enabled in the config.
 	 * @param input  The input string
 	 * @param region The region to apply replacements for and use for logging
 	 * @return double evaluated from the input or a very high default in case of a script exception
 	 */
 	public static double evaluateToDouble(String input, GeneralRegion region) {
+		Expression expression = expressions.get(input);
+		if(expression == null && !expressions.containsKey(input)) {
+			try {
+				expression = Expression.compile(input);
+			} catch(Expression.ExpressionException e) {
+				// Cache that it is not supported, JavaScript is used instead
+				if(config.getBoolean("expressions.javascriptFallback")) {
+					AreaShop.debug("Expression '" + input + "' is not supported, evaluating it with JavaScript: " + e.getMessage());
+				} else {
+					AreaShop.warn("Price of region", region.getName(), "is set with an unsupported expression: '" + input + "' (" + e.getMessage() + "), enable 'expressions.javascriptFallback' in the config to evaluate it with JavaScript");
+				}
+			}
+			expressions.put(input, expression);
+		}
+
+		if(expression != null) {
+			try {
+				return expression.evaluate(region);
+			} catch(Expression.ExpressionException e) {
+				AreaShop.warn("Price of region", region.getName(), "is set with the expression '" + input + "' that cannot be evaluated:", e.getMessage());
+				return 99999999999.0; // High fallback for safety
+			}
+		}
+		if(!config.getBoolean("expressions.javascriptFallback")) {
+			return 99999999999.0; // High fallback for safety
+		}
+		return evaluateWithJavaScript(input, region);
+	}
+
+	/**
+	 * Evaluate string input to a number using JavaScript.
+	 * @param input  The input string
+	 * @param region The region to apply replacements for and use for logging
+	 * @return double evaluated from the input or a very high default in case of a script exception
+	 */
+	private static double evaluateWithJavaScript(String input, GeneralRegion region) {
 		// Replace variables
 		input = Message.fromString(input).replacements(region).getSingle();
 
@@ -786,7 +834,7 @@ public class Utils {
 		if(uuid == null) {
 			return "";
 		} else {
-			String name = Bukkit.getOfflinePlayer(uuid).getName();
+			String name = AreaShop.getInstance().getNameCache().resolveName(uuid);
 			if(name != null) {
 				return name;
 			}
@@ -795,16 +843,16 @@ public class Utils {
 	}
 
 	/**
-	 * Conversion from name to uuid.
+	 * Conversion from name to uuid, names that are not cached are resolved in the background instead of blocking.
 	 * @param name The name of the player
-	 * @return The uuid of the player
+	 * @return The uuid of the player, or null if it is not known yet
 	 */
-	@SuppressWarnings("deprecation") // Fake deprecation by Bukkit to inform developers, method will stay
 	public static String toUniqueId(String name) {
-		if(name == null) {
+		UUID result = AreaShop.getInstance().getNameCache().getUniqueIdOrRequest(name);
+		if(result == null) {
 			return null;
 		} else {
-			return Bukkit.getOfflinePlayer(name).getUniqueId().toString();
+			return result.toString();
 		}
 
 	}